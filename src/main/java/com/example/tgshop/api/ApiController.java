@@ -1,14 +1,18 @@
 package com.example.tgshop.api;
 
 import com.example.tgshop.api.dto.AdminLoginRequest;
+import com.example.tgshop.api.dto.AdminTokenDto;
 import com.example.tgshop.api.dto.CreateOrderRequest;
 import com.example.tgshop.api.dto.CreateProductRequest;
 import com.example.tgshop.api.dto.CreatePromoCodeRequest;
 import com.example.tgshop.api.dto.CreateTagRequest;
+import com.example.tgshop.api.dto.ImageIngestJobDto;
 import com.example.tgshop.api.dto.OrderDto;
 import com.example.tgshop.api.dto.OrderItemDto;
+import com.example.tgshop.api.dto.OrderPageDto;
 import com.example.tgshop.api.dto.ProductDto;
-import com.example.tgshop.api.dto.ProductVariantDto;
+import com.example.tgshop.api.dto.ProductPageDto;
+import com.example.tgshop.api.dto.ProductSearchDto;
 import com.example.tgshop.api.dto.ProductVariantRequest;
 import com.example.tgshop.api.dto.PromoCodeDto;
 import com.example.tgshop.api.dto.TagDto;
@@ -19,34 +23,50 @@ import com.example.tgshop.api.dto.UpdatePromoCodeRequest;
 import com.example.tgshop.api.dto.UpdateTagRequest;
 import com.example.tgshop.api.dto.PaymentTemplateDto;
 import com.example.tgshop.api.dto.UpdatePaymentTemplateRequest;
+import com.example.tgshop.catalog.CatalogChangedEvent;
+import com.example.tgshop.catalog.CatalogMapper;
+import com.example.tgshop.catalog.CatalogService;
+import com.example.tgshop.catalog.CatalogSearchIndex;
+import com.example.tgshop.catalog.CatalogTagIndex;
 import com.example.tgshop.config.AppProperties;
 import com.example.tgshop.common.UuidUtil;
 import com.example.tgshop.order.OrderService;
-import com.example.tgshop.order.OrderItemRepository;
 import com.example.tgshop.order.OrderRepository;
+import com.example.tgshop.order.ProductSales;
+import com.example.tgshop.order.ProductSalesRepository;
 import com.example.tgshop.promo.PromoCode;
 import com.example.tgshop.promo.PromoCodeRepository;
 import com.example.tgshop.product.Product;
 import com.example.tgshop.product.ProductImage;
 import com.example.tgshop.product.ProductVariant;
+import com.example.tgshop.product.ProductGraphLoader;
 import com.example.tgshop.product.ProductRepository;
+import com.example.tgshop.security.AdminTokenService;
 import com.example.tgshop.security.TgInitDataValidator;
 import com.example.tgshop.settings.PaymentTemplateDefaults;
 import com.example.tgshop.settings.Setting;
 import com.example.tgshop.settings.SettingRepository;
 import com.example.tgshop.tag.Tag;
 import com.example.tgshop.tag.TagRepository;
+import com.example.tgshop.media.ImageIngestService;
 import com.example.tgshop.media.ImageStorageService;
 import com.example.tgshop.tg.TgPostImageResolver;
 import jakarta.validation.Valid;
 
 import java.util.List;
+import java.util.Locale;
 import java.time.Instant;
 import java.util.UUID;
 
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 @RestController
@@ -55,37 +75,74 @@ import org.springframework.web.bind.annotation.*;
 @Slf4j
 public class ApiController {
 
+    private static final int MAX_ADMIN_PAGE_SIZE = 200;
+    private static final int MAX_SEARCH_PAGE_SIZE = 100;
+
     private final ProductRepository productRepository;
+    private final ProductGraphLoader productGraphLoader;
     private final TgInitDataValidator initDataValidator;
+    private final AdminTokenService adminTokenService;
     private final AppProperties props;
     private final OrderService orderService;
     private final OrderRepository orderRepository;
-    private final OrderItemRepository orderItemRepository;
+    private final ProductSalesRepository productSalesRepository;
     private final TgPostImageResolver tgPostImageResolver;
     private final TagRepository tagRepository;
     private final ImageStorageService imageStorageService;
+    private final ImageIngestService imageIngestService;
     private final PromoCodeRepository promoCodeRepository;
     private final SettingRepository settingRepository;
-
+    private final CatalogService catalogService;
+    private final ApplicationEventPublisher eventPublisher;
 
     @GetMapping("/products")
-    public List<ProductDto> products() {
+    public ResponseEntity<byte[]> products(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                           @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
         log.info("🛒 API Requesting active products");
-        var soldCounts = loadSoldCounts();
-        var result = productRepository.findActiveWithImages().stream()
-            .map(p -> toDto(p, soldCounts))
-            .toList();
-        log.debug("🛒 API Returning {} active products", result.size());
-        return result;
+        var snapshot = catalogService.snapshot();
+        log.debug("🛒 API Returning {} active products from catalog version={}",
+            snapshot.products().size(), snapshot.version());
+        return snapshot.productsJson().toResponse(ifNoneMatch, acceptEncoding);
+    }
+
+    /**
+     * Поиск по снимку витрины: страница товаров плюс счётчики по тегам для найденного.
+     * Несколько tagId объединяются по tagMode: all — товар во всех тегах, any — хотя бы в одном.
+     */
+    @GetMapping("/products/search")
+    public ProductSearchDto searchProducts(@RequestParam(value = "q", required = false) String q,
+                                           @RequestParam(value = "tagId", required = false) List<UUID> tagIds,
+                                           @RequestParam(value = "tagMode", defaultValue = "all") String tagMode,
+                                           @RequestParam(value = "sort", defaultValue = "default") String sort,
+                                           @RequestParam(value = "page", defaultValue = "0") int page,
+                                           @RequestParam(value = "size", defaultValue = "40") int size) {
+        CatalogTagIndex.Mode mode = switch (tagMode.toLowerCase(Locale.ROOT)) {
+            case "all" -> CatalogTagIndex.Mode.ALL;
+            case "any" -> CatalogTagIndex.Mode.ANY;
+            default -> throw new BadRequest("tagMode must be all or any");
+        };
+        CatalogSearchIndex.Sort order = switch (sort.toLowerCase(Locale.ROOT)) {
+            case "default" -> CatalogSearchIndex.Sort.DEFAULT;
+            case "price-asc" -> CatalogSearchIndex.Sort.PRICE_ASC;
+            case "price-desc" -> CatalogSearchIndex.Sort.PRICE_DESC;
+            case "sold" -> CatalogSearchIndex.Sort.SOLD;
+            default -> throw new BadRequest("sort must be default, price-asc, price-desc or sold");
+        };
+        int pageSize = Math.max(1, Math.min(size, MAX_SEARCH_PAGE_SIZE));
+        int pageNumber = Math.max(0, page);
+        var snapshot = catalogService.snapshot();
+        var result = snapshot.searchIndex().search(q, tagIds, mode, order, pageNumber, pageSize);
+        log.debug("🛒 API Search q={} tagIds={} mode={} sort={} page={} matched={} catalog version={}",
+            q, tagIds, mode, order, pageNumber, result.totalCount(), snapshot.version());
+        boolean hasMore = (long) (pageNumber + 1) * pageSize < result.totalCount();
+        return new ProductSearchDto(result.products(), pageNumber, pageSize, result.totalCount(), hasMore, result.facets());
     }
 
     @GetMapping("/tags")
-    public List<TagDto> tags() {
+    public ResponseEntity<byte[]> tags(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                       @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
         log.info("🛒 API Requesting tags");
-        return tagRepository.findAll().stream()
-            .sorted((a, b) -> a.getName().compareToIgnoreCase(b.getName()))
-            .map(ApiController::toTagDto)
-            .toList();
+        return catalogService.snapshot().tagsJson().toResponse(ifNoneMatch, acceptEncoding);
     }
 
     @GetMapping("/app-info")
@@ -97,22 +154,23 @@ public class ApiController {
     }
 
     @GetMapping("/admin/products")
-    public List<ProductDto> adminProducts(@RequestParam(value = "initData", required = false) String initData,
-                                          @RequestHeader(value = "X-Admin-Password", required = false) String adminPassword) {
-        assertAdmin(initData, adminPassword);
-        log.info("🛒 API Requesting admin product list");
-        var soldCounts = loadSoldCounts();
-        var result = productRepository.findAllWithImages().stream()
-            .map(p -> toDto(p, soldCounts))
-            .toList();
-        log.debug("🛒 API Returning {} products for admin", result.size());
-        return result;
+    public ProductPageDto adminProducts(@RequestParam(value = "initData", required = false) String initData,
+                                        @RequestHeader(value = "X-Admin-Password", required = false) String adminPassword,
+                                        @RequestHeader(value = "X-Admin-Token", required = false) String adminToken,
+                                        @RequestParam(value = "q", required = false) String q,
+                                        @RequestParam(value = "tagId", required = false) UUID tagId,
+                                        @RequestParam(value = "page", defaultValue = "0") int page,
+                                        @RequestParam(value = "size", defaultValue = "60") int size) {
+        assertAdmin(adminToken, initData, adminPassword);
+        log.info("🛒 API Requesting admin product page q={} tagId={} page={}", q, tagId, page);
+        return adminProductPage(false, q, tagId, page, size);
     }
 
     @GetMapping("/admin/tags")
     public List<TagDto> adminTags(@RequestParam(value = "initData", required = false) String initData,
-                                  @RequestHeader(value = "X-Admin-Password", required = false) String adminPassword) {
-        assertAdmin(initData, adminPassword);
+                                  @RequestHeader(value = "X-Admin-Password", required = false) String adminPassword,
+                                  @RequestHeader(value = "X-Admin-Token", required = false) String adminToken) {
+        assertAdmin(adminToken, initData, adminPassword);
         log.info("🛒 API Requesting admin tag list");
         return tagRepository.findAll().stream()
             .sorted((a, b) -> a.getName().compareToIgnoreCase(b.getName()))
@@ -124,8 +182,9 @@ public class ApiController {
     @ResponseStatus(HttpStatus.CREATED)
     public TagDto createTag(@RequestParam(value = "initData", required = false) String initData,
                             @RequestHeader(value = "X-Admin-Password", required = false) String adminPassword,
+                            @RequestHeader(value = "X-Admin-Token", required = false) String adminToken,
                             @RequestBody @Valid CreateTagRequest req) {
-        assertAdmin(initData, adminPassword);
+        assertAdmin(adminToken, initData, adminPassword);
         String name = req.name().trim();
         log.info("🛒 API Creating tag name={}", name);
         var existing = tagRepository.findByNameIgnoreCase(name);
@@ -137,6 +196,7 @@ public class ApiController {
         tag.setName(name);
         var saved = tagRepository.save(tag);
         log.info("🛒 API Tag created uuid={}", saved.uuid());
+        eventPublisher.publishEvent(new CatalogChangedEvent("tag created"));
         return toTagDto(saved);
     }
 
@@ -144,8 +204,9 @@ public class ApiController {
     public TagDto updateTag(@PathVariable("id") UUID id,
                             @RequestParam(value = "initData", required = false) String initData,
                             @RequestHeader(value = "X-Admin-Password", required = false) String adminPassword,
+                            @RequestHeader(value = "X-Admin-Token", required = false) String adminToken,
                             @RequestBody @Valid UpdateTagRequest req) {
-        assertAdmin(initData, adminPassword);
+        assertAdmin(adminToken, initData, adminPassword);
         String name = req.name().trim();
         log.info("🛒 API Updating tag uuid={} name={}", id, name);
         Tag tag = tagRepository.findById(UuidUtil.toBytes(id))
@@ -156,6 +217,7 @@ public class ApiController {
         }
         tag.setName(name);
         var saved = tagRepository.save(tag);
+        eventPublisher.publishEvent(new CatalogChangedEvent("tag updated"));
         return toTagDto(saved);
     }
 
@@ -163,44 +225,96 @@ public class ApiController {
     @ResponseStatus(HttpStatus.NO_CONTENT)
     public void deleteTag(@PathVariable("id") UUID id,
                           @RequestParam(value = "initData", required = false) String initData,
-                          @RequestHeader(value = "X-Admin-Password", required = false) String adminPassword) {
-        assertAdmin(initData, adminPassword);
+                          @RequestHeader(value = "X-Admin-Password", required = false) String adminPassword,
+                          @RequestHeader(value = "X-Admin-Token", required = false) String adminToken) {
+        assertAdmin(adminToken, initData, adminPassword);
         log.info("🛒 API Deleting tag uuid={}", id);
         Tag tag = tagRepository.findById(UuidUtil.toBytes(id))
             .orElseThrow(() -> new NotFound("Tag not found: " + id));
         tagRepository.delete(tag);
         log.info("🛒 API Tag deleted uuid={}", id);
+        eventPublisher.publishEvent(new CatalogChangedEvent("tag deleted"));
     }
 
     @GetMapping("/admin/products/archived")
-    public List<ProductDto> adminArchivedProducts(@RequestParam(value = "initData", required = false) String initData,
-                                                  @RequestHeader(value = "X-Admin-Password", required = false) String adminPassword) {
-        assertAdmin(initData, adminPassword);
-        log.info("🛒 API Requesting archived products for admin");
-        var soldCounts = loadSoldCounts();
-        var result = productRepository.findArchivedWithImages().stream()
+    public ProductPageDto adminArchivedProducts(@RequestParam(value = "initData", required = false) String initData,
+                                                @RequestHeader(value = "X-Admin-Password", required = false) String adminPassword,
+                                                @RequestHeader(value = "X-Admin-Token", required = false) String adminToken,
+                                                @RequestParam(value = "q", required = false) String q,
+                                                @RequestParam(value = "tagId", required = false) UUID tagId,
+                                                @RequestParam(value = "page", defaultValue = "0") int page,
+                                                @RequestParam(value = "size", defaultValue = "60") int size) {
+        assertAdmin(adminToken, initData, adminPassword);
+        log.info("🛒 API Requesting archived product page q={} tagId={} page={}", q, tagId, page);
+        return adminProductPage(true, q, tagId, page, size);
+    }
+
+    /** Фильтры и страница — в SQL; коллекции страницы догружаются батчами при маппинге в DTO. */
+    private ProductPageDto adminProductPage(boolean archived, String q, UUID tagId, int page, int size) {
+        int pageSize = Math.max(1, Math.min(size, MAX_ADMIN_PAGE_SIZE));
+        var pageable = PageRequest.of(Math.max(0, page), pageSize,
+            Sort.by(Sort.Direction.DESC, "createdAt").and(Sort.by(Sort.Direction.DESC, "id")));
+        String titlePattern = q == null || q.isBlank()
+            ? null
+            : "%" + q.trim().toLowerCase(Locale.ROOT)
+                .replace("!", "!!")
+                .replace("%", "!%")
+                .replace("_", "!_") + "%";
+        var result = productRepository.findAdminPage(archived, titlePattern,
+            tagId != null ? UuidUtil.toBytes(tagId) : null, pageable);
+        var soldCounts = loadSoldCounts(result.getContent());
+        var products = result.getContent().stream()
             .map(p -> toDto(p, soldCounts))
             .toList();
-        log.debug("🛒 API Returning {} archived products for admin", result.size());
-        return result;
+        log.debug("🛒 API Returning {} of {} products for admin archived={}",
+            products.size(), result.getTotalElements(), archived);
+        return new ProductPageDto(products, result.getNumber(), pageSize, result.getTotalElements(), result.hasNext());
     }
 
     @GetMapping("/admin/orders")
-    public List<OrderDto> adminOrders(@RequestParam(value = "initData", required = false) String initData,
-                                      @RequestHeader(value = "X-Admin-Password", required = false) String adminPassword) {
-        assertAdmin(initData, adminPassword);
-        log.info("🛒 API Requesting admin order list");
-        var result = orderRepository.findAllWithItems().stream()
+    public OrderPageDto adminOrders(@RequestParam(value = "initData", required = false) String initData,
+                                    @RequestHeader(value = "X-Admin-Password", required = false) String adminPassword,
+                                    @RequestHeader(value = "X-Admin-Token", required = false) String adminToken,
+                                    @RequestParam(value = "status", required = false) String status,
+                                    @RequestParam(value = "tgUserId", required = false) Long tgUserId,
+                                    @RequestParam(value = "from", required = false)
+                                    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+                                    @RequestParam(value = "to", required = false)
+                                    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+                                    @RequestParam(value = "cursor", required = false) String cursor,
+                                    @RequestParam(value = "limit", defaultValue = "50") int limit) {
+        assertAdmin(adminToken, initData, adminPassword);
+        log.info("🛒 API Requesting admin order page status={} tgUserId={} from={} to={} cursor={}",
+            status, tgUserId, from, to, cursor != null);
+        var filter = new OrderService.OrderFilter(
+            status == null || status.isBlank() ? null : status.trim().toUpperCase(Locale.ROOT),
+            tgUserId, from, to);
+        OrderService.OrderPage page;
+        try {
+            page = orderService.findPage(filter, cursor, limit);
+        } catch (IllegalArgumentException ex) {
+            log.warn("🛒 API Order page rejected: {}", ex.getMessage());
+            throw new BadRequest(ex.getMessage());
+        }
+        var orders = page.orders().stream()
             .map(ApiController::toOrderDto)
             .toList();
-        log.debug("🛒 API Returning {} orders for admin", result.size());
-        return result;
+        Long totalCount = null;
+        Long revenueMinor = null;
+        if (cursor == null || cursor.isBlank()) {
+            var totals = orderService.summarize(filter);
+            totalCount = totals.getOrderCount();
+            revenueMinor = totals.getRevenueMinor();
+        }
+        log.debug("🛒 API Returning {} orders for admin hasMore={}", orders.size(), page.nextCursor() != null);
+        return new OrderPageDto(orders, page.nextCursor(), totalCount, revenueMinor);
     }
 
     @GetMapping("/admin/settings/payment-template")
     public PaymentTemplateDto getPaymentTemplate(@RequestParam(value = "initData", required = false) String initData,
-                                                 @RequestHeader(value = "X-Admin-Password", required = false) String adminPassword) {
-        assertAdmin(initData, adminPassword);
+                                                 @RequestHeader(value = "X-Admin-Password", required = false) String adminPassword,
+                                                 @RequestHeader(value = "X-Admin-Token", required = false) String adminToken) {
+        assertAdmin(adminToken, initData, adminPassword);
         String html = settingRepository.findById(PaymentTemplateDefaults.PAYMENT_TEMPLATE_KEY)
             .map(Setting::getValue)
             .orElseGet(PaymentTemplateDefaults::defaultTemplate);
@@ -210,8 +324,9 @@ public class ApiController {
     @PutMapping("/admin/settings/payment-template")
     public PaymentTemplateDto updatePaymentTemplate(@RequestParam(value = "initData", required = false) String initData,
                                                     @RequestHeader(value = "X-Admin-Password", required = false) String adminPassword,
+                                                    @RequestHeader(value = "X-Admin-Token", required = false) String adminToken,
                                                     @RequestBody @Valid UpdatePaymentTemplateRequest req) {
-        assertAdmin(initData, adminPassword);
+        assertAdmin(adminToken, initData, adminPassword);
         String html = sanitizePaymentTemplate(req.html());
         settingRepository.save(new Setting(PaymentTemplateDefaults.PAYMENT_TEMPLATE_KEY, html));
         return new PaymentTemplateDto(html);
@@ -234,15 +349,16 @@ public class ApiController {
     @ResponseStatus(HttpStatus.NO_CONTENT)
     public void deleteOrder(@PathVariable("id") UUID id,
                             @RequestParam(value = "initData", required = false) String initData,
-                            @RequestHeader(value = "X-Admin-Password", required = false) String adminPassword) {
-        assertAdmin(initData, adminPassword);
+                            @RequestHeader(value = "X-Admin-Password", required = false) String adminPassword,
+                            @RequestHeader(value = "X-Admin-Token", required = false) String adminToken) {
+        assertAdmin(adminToken, initData, adminPassword);
         log.info("🛒 API Deleting order uuid={}", id);
-        var order = orderRepository.findById(UuidUtil.toBytes(id))
-            .orElseThrow(() -> {
-                log.warn("🛒 API Order delete failed: not found uuid={}", id);
-                return new NotFound("Order not found: " + id);
-            });
-        orderRepository.delete(order);
+        try {
+            orderService.delete(id);
+        } catch (IllegalArgumentException ex) {
+            log.warn("🛒 API Order delete failed: not found uuid={}", id);
+            throw new NotFound(ex.getMessage());
+        }
         log.info("🛒 API Order deleted uuid={}", id);
     }
 
@@ -304,8 +420,9 @@ public class ApiController {
     @ResponseStatus(HttpStatus.CREATED)
     public ProductDto createProduct(@RequestParam(value = "initData", required = false) String initData,
                                     @RequestHeader(value = "X-Admin-Password", required = false) String adminPassword,
+                                    @RequestHeader(value = "X-Admin-Token", required = false) String adminToken,
                                     @RequestBody @Valid CreateProductRequest req) {
-        assertAdmin(initData, adminPassword);
+        assertAdmin(adminToken, initData, adminPassword);
         assertUniqueProductTitle(req.title(), null);
         log.info("🛒 API Creating product title={} priceMinor={} stock={}", req.title(), req.priceMinor(), req.stock());
 
@@ -323,48 +440,50 @@ public class ApiController {
         p.getTags().addAll(resolveTags(req.tagIds()));
         applyVariants(p, req.variants());
 
-        var resolvedUrls = tgPostImageResolver.resolveImages(req.imageUrls());
-        log.debug("🛒 API Resolved {} image urls for new product", resolvedUrls.size());
-        var storedUrls = imageStorageService.downloadImages(productId, resolvedUrls);
-        int i = 0;
-        for (String url : storedUrls) {
-            var img = new ProductImage();
-            img.setProduct(p);
-            img.setUrl(url);
-            img.setSortOrder(i++);
-            p.getImages().add(img);
+        boolean ingestAsync = imageStorageService.needsDownload(req.imageUrls());
+        if (!ingestAsync) {
+            var resolvedUrls = tgPostImageResolver.resolveImages(req.imageUrls());
+            log.debug("🛒 API Resolved {} image urls for new product", resolvedUrls.size());
+            setImages(p, imageStorageService.downloadImages(productId, resolvedUrls));
         }
 
         var saved = productRepository.save(p);
-        log.info("🛒 API Product created uuid={} images={}", saved.uuid(), saved.getImages().size());
+        if (ingestAsync) {
+            imageIngestService.enqueue(productId, req.imageUrls(), false);
+        }
+        log.info("🛒 API Product created uuid={} images={} asyncImages={}", saved.uuid(), saved.getImages().size(), ingestAsync);
+        eventPublisher.publishEvent(new CatalogChangedEvent("product created"));
         return toDto(saved, 0L);
     }
 
     @PatchMapping("/admin/products/{productId}/active")
     public ProductDto updateProductActive(@RequestParam(value = "initData", required = false) String initData,
                                           @RequestHeader(value = "X-Admin-Password", required = false) String adminPassword,
+                                          @RequestHeader(value = "X-Admin-Token", required = false) String adminToken,
                                           @PathVariable("productId") String productId,
                                           @RequestBody @Valid UpdateProductActiveRequest req) {
-        assertAdmin(initData, adminPassword);
+        assertAdmin(adminToken, initData, adminPassword);
 
         byte[] idBytes = UuidUtil.toBytes(UUID.fromString(productId));
-        Product product = productRepository.findByIdWithImages(idBytes)
+        Product product = productGraphLoader.findById(idBytes)
                 .orElseThrow(() -> new NotFound("Product not found"));
         product.setActive(req.active());
         var saved = productRepository.save(product);
         log.info("🛒 API Updated product active uuid={} active={}", saved.uuid(), saved.isActive());
+        eventPublisher.publishEvent(new CatalogChangedEvent("product active changed"));
         return toDto(saved, soldCountFor(saved));
     }
 
     @PatchMapping("/admin/products/{productId}/archived")
     public ProductDto updateProductArchived(@RequestParam(value = "initData", required = false) String initData,
                                             @RequestHeader(value = "X-Admin-Password", required = false) String adminPassword,
+                                            @RequestHeader(value = "X-Admin-Token", required = false) String adminToken,
                                             @PathVariable("productId") String productId,
                                             @RequestBody @Valid UpdateProductArchivedRequest req) {
-        assertAdmin(initData, adminPassword);
+        assertAdmin(adminToken, initData, adminPassword);
 
         byte[] idBytes = UuidUtil.toBytes(UUID.fromString(productId));
-        Product product = productRepository.findByIdWithImages(idBytes)
+        Product product = productGraphLoader.findById(idBytes)
             .orElseThrow(() -> new NotFound("Product not found"));
         product.setArchived(req.archived());
         if (req.archived()) {
@@ -372,18 +491,20 @@ public class ApiController {
         }
         var saved = productRepository.save(product);
         log.info("🛒 API Updated product archived uuid={} archived={}", saved.uuid(), saved.isArchived());
+        eventPublisher.publishEvent(new CatalogChangedEvent("product archived changed"));
         return toDto(saved, soldCountFor(saved));
     }
 
     @PatchMapping("/admin/products/{productId}")
     public ProductDto updateProduct(@RequestParam(value = "initData", required = false) String initData,
                                     @RequestHeader(value = "X-Admin-Password", required = false) String adminPassword,
+                                    @RequestHeader(value = "X-Admin-Token", required = false) String adminToken,
                                     @PathVariable("productId") String productId,
                                     @RequestBody @Valid UpdateProductRequest req) {
-        assertAdmin(initData, adminPassword);
+        assertAdmin(adminToken, initData, adminPassword);
 
         byte[] idBytes = UuidUtil.toBytes(UUID.fromString(productId));
-        Product product = productRepository.findByIdWithImages(idBytes)
+        Product product = productGraphLoader.findById(idBytes)
             .orElseThrow(() -> new NotFound("Product not found"));
 
         product.setTitle(req.title());
@@ -393,17 +514,15 @@ public class ApiController {
         product.setStock(req.stock());
         product.setActive(req.active());
 
-        product.getImages().clear();
-        var resolvedUrls = tgPostImageResolver.resolveImages(req.imageUrls());
-        log.debug("🛒 API Resolved {} image urls for product update uuid={}", resolvedUrls.size(), product.uuid());
-        var storedUrls = imageStorageService.downloadImages(product.uuid(), resolvedUrls, true);
-        int i = 0;
-        for (String url : storedUrls) {
-            var img = new ProductImage();
-            img.setProduct(product);
-            img.setUrl(url);
-            img.setSortOrder(i++);
-            product.getImages().add(img);
+        // внешние картинки качаются в фоне, до её завершения у товара остаются текущие
+        boolean ingestAsync = imageStorageService.needsDownload(req.imageUrls());
+        if (ingestAsync) {
+            imageIngestService.enqueue(product.uuid(), req.imageUrls(), true);
+        } else {
+            imageIngestService.supersede(product.uuid());
+            var resolvedUrls = tgPostImageResolver.resolveImages(req.imageUrls());
+            log.debug("🛒 API Resolved {} image urls for product update uuid={}", resolvedUrls.size(), product.uuid());
+            setImages(product, imageStorageService.downloadImages(product.uuid(), resolvedUrls, true));
         }
         product.getTags().clear();
         product.getTags().addAll(resolveTags(req.tagIds()));
@@ -411,24 +530,72 @@ public class ApiController {
 
         var saved = productRepository.save(product);
         log.info("🛒 API Updated product uuid={} images={}", saved.uuid(), saved.getImages().size());
+        eventPublisher.publishEvent(new CatalogChangedEvent("product updated"));
         return toDto(saved, soldCountFor(saved));
     }
 
     @PostMapping("/admin/login")
-    @ResponseStatus(HttpStatus.NO_CONTENT)
-    public void adminLogin(@RequestBody @Valid AdminLoginRequest req) {
-        if (!isPasswordValid(req.password())) {
-            log.warn("🛒 API Admin login failed due to invalid password");
-            throw new Unauthorized("Bad password");
+    public AdminTokenDto adminLogin(@RequestBody AdminLoginRequest req) {
+        long userId;
+        if (req.password() != null && !req.password().isBlank()) {
+            if (!isPasswordValid(req.password())) {
+                log.warn("🛒 API Admin login failed due to invalid password");
+                throw new Unauthorized("Bad password");
+            }
+            userId = 0;
+        } else {
+            userId = adminUserIdFromInitData(req.initData());
         }
-        log.info("🛒 API Admin login succeeded");
+        var issued = adminTokenService.issue(userId);
+        log.info("🛒 API Admin login succeeded tgUserId={}", userId);
+        return new AdminTokenDto(issued.token(), issued.expiresAt());
+    }
+
+    @GetMapping("/admin/image-jobs")
+    public List<ImageIngestJobDto> imageJobs(@RequestParam(value = "initData", required = false) String initData,
+                                             @RequestHeader(value = "X-Admin-Password", required = false) String adminPassword,
+                                             @RequestHeader(value = "X-Admin-Token", required = false) String adminToken) {
+        assertAdmin(adminToken, initData, adminPassword);
+        return imageIngestService.recentJobs().stream()
+            .map(j -> new ImageIngestJobDto(j.getId(), j.productUuid(), j.getStatus(), j.getAttempts(),
+                j.getLastError(), j.getNextAttemptAt(), j.getUpdatedAt()))
+            .toList();
     }
 
-    private void assertAdmin(String initData, String adminPassword) {
+    private static void setImages(Product product, List<String> storedUrls) {
+        product.getImages().clear();
+        int i = 0;
+        for (String url : storedUrls) {
+            var img = new ProductImage();
+            img.setProduct(product);
+            img.setUrl(url);
+            img.setSortOrder(i++);
+            product.getImages().add(img);
+        }
+    }
+
+    private void assertAdmin(String adminToken, String initData, String adminPassword) {
+        if (adminToken != null && !adminToken.isBlank()) {
+            var claims = adminTokenService.verify(adminToken)
+                .orElseThrow(() -> {
+                    log.warn("🛒 API Admin access denied: invalid or expired token");
+                    return new Unauthorized("Bad token");
+                });
+            if (claims.userId() != 0 && !props.getTelegram().adminUserIdSet().contains(claims.userId())) {
+                log.warn("🛒 API Admin access denied for tgUserId={} (token)", claims.userId());
+                throw new Forbidden("Not admin");
+            }
+            return;
+        }
         if (isPasswordValid(adminPassword)) {
             log.debug("🛒 API Admin access granted via password");
             return;
         }
+        long userId = adminUserIdFromInitData(initData);
+        log.debug("🛒 API Admin access granted via initData for tgUserId={}", userId);
+    }
+
+    private long adminUserIdFromInitData(String initData) {
         if (initData == null || initData.isBlank()) {
             log.warn("🛒 API Admin access denied: missing initData");
             throw new Forbidden("Not admin");
@@ -442,7 +609,7 @@ public class ApiController {
             log.warn("🛒 API Admin access denied for tgUserId={}", v.userId());
             throw new Forbidden("Not admin");
         }
-        log.debug("🛒 API Admin access granted via initData for tgUserId={}", v.userId());
+        return v.userId();
     }
 
     private boolean isPasswordValid(String adminPassword) {
@@ -455,49 +622,33 @@ public class ApiController {
     }
 
     private long soldCountFor(Product p) {
-        var sold = orderItemRepository.sumSoldByProductId(p.getId());
+        var sold = productSalesRepository.findById(p.getId())
+            .map(ProductSales::getSold)
+            .orElse(0L);
         log.debug("🛒 API Loaded sold count for product uuid={} sold={}", p.uuid(), sold);
         return sold;
     }
 
-    private java.util.Map<UUID, Long> loadSoldCounts() {
-        var result = orderItemRepository.findSoldCounts().stream()
-            .collect(java.util.stream.Collectors.toMap(
-                row -> UuidUtil.fromBytes(row.getProductId()),
-                row -> row.getSold() == null ? 0L : row.getSold()
-            ));
-        log.debug("🛒 API Loaded sold counts for {} products", result.size());
+    /** Счётчики продаж только для товаров страницы — без чтения всей product_sales. */
+    private java.util.Map<UUID, Long> loadSoldCounts(List<Product> products) {
+        var ids = products.stream().map(Product::getId).toList();
+        var result = new java.util.HashMap<UUID, Long>(ids.size() * 2);
+        productSalesRepository.findAllById(ids)
+            .forEach(row -> result.put(UuidUtil.fromBytes(row.getProductId()), row.getSold()));
+        log.debug("🛒 API Loaded sold counts for {} of {} products", result.size(), ids.size());
         return result;
     }
 
     private static ProductDto toDto(Product p, java.util.Map<UUID, Long> soldCounts) {
-        long soldCount = soldCounts.getOrDefault(p.uuid(), 0L);
-        return toDto(p, soldCount);
+        return CatalogMapper.toDto(p, soldCounts);
     }
 
     private static ProductDto toDto(Product p, long soldCount) {
-        return new ProductDto(
-                p.uuid(),
-                p.getTitle(),
-                p.getDescription(),
-                p.getPriceMinor(),
-                p.getCurrency(),
-                p.getStock(),
-                p.getImages().stream().map(ProductImage::getUrl).toList(),
-                p.getTags().stream().map(ApiController::toTagDto).toList(),
-                p.getVariants().stream().map(ApiController::toVariantDto).toList(),
-                p.isActive(),
-                p.isArchived(),
-                soldCount
-        );
+        return CatalogMapper.toDto(p, soldCount);
     }
 
     private static TagDto toTagDto(Tag tag) {
-        return new TagDto(tag.uuid(), tag.getName());
-    }
-
-    private static ProductVariantDto toVariantDto(ProductVariant variant) {
-        return new ProductVariantDto(variant.uuid(), variant.getName(), variant.getStock());
+        return CatalogMapper.toTagDto(tag);
     }
 
     private void applyVariants(Product product, List<ProductVariantRequest> variants) {
@@ -573,8 +724,9 @@ public class ApiController {
 
     @GetMapping("/admin/promocodes")
     public List<PromoCodeDto> promoCodes(@RequestParam(value = "initData", required = false) String initData,
-                                         @RequestHeader(value = "X-Admin-Password", required = false) String adminPassword) {
-        assertAdmin(initData, adminPassword);
+                                         @RequestHeader(value = "X-Admin-Password", required = false) String adminPassword,
+                                         @RequestHeader(value = "X-Admin-Token", required = false) String adminToken) {
+        assertAdmin(adminToken, initData, adminPassword);
         return promoCodeRepository.findAll().stream()
             .sorted((a, b) -> b.getCreatedAt().compareTo(a.getCreatedAt()))
             .map(ApiController::toPromoDto)
@@ -585,8 +737,9 @@ public class ApiController {
     @ResponseStatus(HttpStatus.CREATED)
     public PromoCodeDto createPromoCode(@RequestParam(value = "initData", required = false) String initData,
                                         @RequestHeader(value = "X-Admin-Password", required = false) String adminPassword,
+                                        @RequestHeader(value = "X-Admin-Token", required = false) String adminToken,
                                         @RequestBody @Valid CreatePromoCodeRequest req) {
-        assertAdmin(initData, adminPassword);
+        assertAdmin(adminToken, initData, adminPassword);
         String code = normalizePromoCode(req.code());
         if (promoCodeRepository.existsByCodeIgnoreCase(code)) {
             throw new BadRequest("Promo code already exists");
@@ -604,9 +757,10 @@ public class ApiController {
     @PatchMapping("/admin/promocodes/{promoId}")
     public PromoCodeDto updatePromoCode(@RequestParam(value = "initData", required = false) String initData,
                                         @RequestHeader(value = "X-Admin-Password", required = false) String adminPassword,
+                                        @RequestHeader(value = "X-Admin-Token", required = false) String adminToken,
                                         @PathVariable("promoId") String promoId,
                                         @RequestBody @Valid UpdatePromoCodeRequest req) {
-        assertAdmin(initData, adminPassword);
+        assertAdmin(adminToken, initData, adminPassword);
         PromoCode promo = promoCodeRepository.findById(UuidUtil.toBytes(UUID.fromString(promoId)))
             .orElseThrow(() -> new NotFound("Promo code not found"));
         String code = normalizePromoCode(req.code());
@@ -627,8 +781,9 @@ public class ApiController {
     @ResponseStatus(HttpStatus.NO_CONTENT)
     public void deletePromoCode(@RequestParam(value = "initData", required = false) String initData,
                                 @RequestHeader(value = "X-Admin-Password", required = false) String adminPassword,
+                                @RequestHeader(value = "X-Admin-Token", required = false) String adminToken,
                                 @PathVariable("promoId") String promoId) {
-        assertAdmin(initData, adminPassword);
+        assertAdmin(adminToken, initData, adminPassword);
         promoCodeRepository.deleteById(UuidUtil.toBytes(UUID.fromString(promoId)));
     }
 
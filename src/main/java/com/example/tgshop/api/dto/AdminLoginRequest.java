@@ -1,5 +1,4 @@
 package com.example.tgshop.api.dto;
 
-import jakarta.validation.constraints.NotBlank;
-
-public record AdminLoginRequest(@NotBlank String password) {}
+/** Вход в админку по паролю или по initData администратора. */
+public record AdminLoginRequest(String password, String initData) {}
@@ -0,0 +1,5 @@
+package com.example.tgshop.api.dto;
+
+import java.time.Instant;
+
+public record AdminTokenDto(String token, Instant expiresAt) {}
@@ -0,0 +1,14 @@
+package com.example.tgshop.api.dto;
+
+import java.time.Instant;
+import java.util.UUID;
+
+public record ImageIngestJobDto(
+    Long id,
+    UUID productId,
+    String status,
+    int attempts,
+    String lastError,
+    Instant nextAttemptAt,
+    Instant updatedAt
+) {}
@@ -0,0 +1,11 @@
+package com.example.tgshop.api.dto;
+
+import java.util.List;
+
+/** Страница заказов; totalCount и revenueMinor считаются только для первой страницы (без cursor). */
+public record OrderPageDto(
+    List<OrderDto> orders,
+    String nextCursor,
+    Long totalCount,
+    Long revenueMinor
+) {}
@@ -0,0 +1,11 @@
+package com.example.tgshop.api.dto;
+
+import java.util.List;
+
+public record ProductPageDto(
+    List<ProductDto> products,
+    int page,
+    int size,
+    long totalCount,
+    boolean hasMore
+) {}
@@ -0,0 +1,12 @@
+package com.example.tgshop.api.dto;
+
+import java.util.List;
+
+public record ProductSearchDto(
+    List<ProductDto> products,
+    int page,
+    int size,
+    long totalCount,
+    boolean hasMore,
+    List<TagFacetDto> facets
+) {}
@@ -0,0 +1,5 @@
+package com.example.tgshop.api.dto;
+
+import java.util.UUID;
+
+public record TagFacetDto(UUID id, String name, int count) {}
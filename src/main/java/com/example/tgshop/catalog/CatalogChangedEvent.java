@@ -0,0 +1,7 @@
+package com.example.tgshop.catalog;
+
+/**
+ * Публикуется после любой мутации, влияющей на витрину (товары, теги, варианты, сток, заказы).
+ * Слушатель в {@link CatalogService} пересобирает снапшот после коммита транзакции.
+ */
+public record CatalogChangedEvent(String reason) {}
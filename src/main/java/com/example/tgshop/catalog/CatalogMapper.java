@@ -0,0 +1,45 @@
+package com.example.tgshop.catalog;
+
+import com.example.tgshop.api.dto.ProductDto;
+import com.example.tgshop.api.dto.ProductVariantDto;
+import com.example.tgshop.api.dto.TagDto;
+import com.example.tgshop.product.Product;
+import com.example.tgshop.product.ProductImage;
+import com.example.tgshop.product.ProductVariant;
+import com.example.tgshop.tag.Tag;
+import java.util.Map;
+import java.util.UUID;
+
+public final class CatalogMapper {
+  private CatalogMapper() {}
+
+  public static ProductDto toDto(Product p, Map<UUID, Long> soldCounts) {
+    long soldCount = soldCounts.getOrDefault(p.uuid(), 0L);
+    return toDto(p, soldCount);
+  }
+
+  public static ProductDto toDto(Product p, long soldCount) {
+    return new ProductDto(
+        p.uuid(),
+        p.getTitle(),
+        p.getDescription(),
+        p.getPriceMinor(),
+        p.getCurrency(),
+        p.getStock(),
+        p.getImages().stream().map(ProductImage::getUrl).toList(),
+        p.getTags().stream().map(CatalogMapper::toTagDto).toList(),
+        p.getVariants().stream().map(CatalogMapper::toVariantDto).toList(),
+        p.isActive(),
+        p.isArchived(),
+        soldCount
+    );
+  }
+
+  public static TagDto toTagDto(Tag tag) {
+    return new TagDto(tag.uuid(), tag.getName());
+  }
+
+  public static ProductVariantDto toVariantDto(ProductVariant variant) {
+    return new ProductVariantDto(variant.uuid(), variant.getName(), variant.getStock());
+  }
+}
@@ -0,0 +1,267 @@
+package com.example.tgshop.catalog;
+
+import com.example.tgshop.api.dto.ProductDto;
+import com.example.tgshop.api.dto.ProductVariantDto;
+import com.example.tgshop.api.dto.TagDto;
+import com.example.tgshop.api.dto.TagFacetDto;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Инвертированный индекс витрины для GET /api/products/search.
+ *
+ * Индексируются название, описание, имена тегов и вариантов. Токены — последовательности букв и цифр
+ * в нижнем регистре, «ё» приводится к «е»; каждое слово запроса ищется как префикс, слова между собой
+ * пересекаются. Номера в постингах — позиции товаров в снимке; порядок выдачи задаёт {@link Sort}
+ * по заранее отсортированным позициям, так что страницы сходятся с сортировкой всей выдачи.
+ *
+ * Индекс неизменяем и собирается вместе со снимком. Токены товара, текст которого не менялся,
+ * берутся из предыдущего индекса без повторного разбора. Фильтр и фасеты по тегам считает
+ * {@link CatalogTagIndex} над теми же позициями.
+ */
+public final class CatalogSearchIndex {
+
+  public record Result(List<ProductDto> products, int totalCount, List<TagFacetDto> facets) {}
+
+  /** Порядок выдачи — те же варианты, что в сортировке мини-аппа. */
+  public enum Sort {
+    /** Порядок витрины, товары без остатка в конце. */
+    DEFAULT,
+    PRICE_ASC,
+    PRICE_DESC,
+    SOLD
+  }
+
+  /** Разобранный текст товара: по {@code source} проверяем, можно ли переиспользовать токены. */
+  private record Indexed(String source, Set<String> tokens) {}
+
+  private static final int MAX_QUERY_TERMS = 8;
+
+  private static final CatalogSearchIndex EMPTY =
+      new CatalogSearchIndex(List.of(), CatalogTagIndex.empty(), Map.of(), new TreeMap<>(), orders(List.of()));
+
+  private final List<ProductDto> products;
+  private final CatalogTagIndex tagIndex;
+  private final Map<UUID, Indexed> indexedById;
+  private final NavigableMap<String, int[]> postings;
+  private final Map<Sort, int[]> orders;
+
+  private CatalogSearchIndex(
+      List<ProductDto> products,
+      CatalogTagIndex tagIndex,
+      Map<UUID, Indexed> indexedById,
+      NavigableMap<String, int[]> postings,
+      Map<Sort, int[]> orders
+  ) {
+    this.products = products;
+    this.tagIndex = tagIndex;
+    this.indexedById = indexedById;
+    this.postings = postings;
+    this.orders = orders;
+  }
+
+  public static CatalogSearchIndex empty() {
+    return EMPTY;
+  }
+
+  public static CatalogSearchIndex build(
+      List<ProductDto> products,
+      CatalogTagIndex tagIndex,
+      CatalogSearchIndex previous
+  ) {
+    var indexedById = new HashMap<UUID, Indexed>(products.size() * 2);
+    var builders = new HashMap<String, Postings>();
+    for (int ordinal = 0; ordinal < products.size(); ordinal++) {
+      var product = products.get(ordinal);
+      String source = sourceText(product);
+      Indexed indexed = previous != null ? previous.indexedById.get(product.id()) : null;
+      if (indexed == null || !indexed.source().equals(source)) {
+        indexed = new Indexed(source, Collections.unmodifiableSet(new LinkedHashSet<>(tokenize(source))));
+      }
+      indexedById.put(product.id(), indexed);
+      for (String token : indexed.tokens()) {
+        builders.computeIfAbsent(token, t -> new Postings()).add(ordinal);
+      }
+    }
+    var postings = new TreeMap<String, int[]>();
+    builders.forEach((token, list) -> postings.put(token, list.toArray()));
+    return new CatalogSearchIndex(products, tagIndex, indexedById, postings, orders(products));
+  }
+
+  /** Позиции товаров в порядке каждой сортировки; при равенстве ключей — порядок витрины. */
+  private static Map<Sort, int[]> orders(List<ProductDto> products) {
+    var orders = new EnumMap<Sort, int[]>(Sort.class);
+    orders.put(Sort.DEFAULT, sortedOrdinals(products,
+        Comparator.comparing((ProductDto p) -> p.stock() <= 0)));
+    orders.put(Sort.PRICE_ASC, sortedOrdinals(products, Comparator.comparingLong(ProductDto::priceMinor)));
+    orders.put(Sort.PRICE_DESC, sortedOrdinals(products,
+        Comparator.comparingLong(ProductDto::priceMinor).reversed()));
+    orders.put(Sort.SOLD, sortedOrdinals(products, Comparator.comparingLong(ProductDto::soldCount).reversed()));
+    return orders;
+  }
+
+  private static int[] sortedOrdinals(List<ProductDto> products, Comparator<ProductDto> comparator) {
+    var ordinals = new ArrayList<Integer>(products.size());
+    for (int i = 0; i < products.size(); i++) {
+      ordinals.add(i);
+    }
+    // List.sort устойчива, поэтому равные товары остаются в порядке витрины
+    ordinals.sort((a, b) -> comparator.compare(products.get(a), products.get(b)));
+    return ordinals.stream().mapToInt(Integer::intValue).toArray();
+  }
+
+  /** Сколько товаров проиндексировано заново относительно {@code previous} — для лога пересборки. */
+  public int reindexedSince(CatalogSearchIndex previous) {
+    int count = 0;
+    for (var entry : indexedById.entrySet()) {
+      if (previous == null || previous.indexedById.get(entry.getKey()) != entry.getValue()) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  public int tokenCount() {
+    return postings.size();
+  }
+
+  /**
+   * Товары, подходящие под запрос, с учётом фильтра по тегам, сортировки и страницы. Пустой запрос совпадает
+   * со всем каталогом. Фасеты считаются по совпадениям до фильтра по тегам, чтобы счётчики соседних тегов
+   * не обнулялись.
+   */
+  public Result search(
+      String query,
+      Collection<UUID> tagIds,
+      CatalogTagIndex.Mode mode,
+      Sort sort,
+      int page,
+      int size
+  ) {
+    BitSet matched = match(query);
+    var facets = tagIndex.facets(matched);
+
+    BitSet filtered = matched;
+    if (tagIds != null && !tagIds.isEmpty()) {
+      filtered = (BitSet) matched.clone();
+      filtered.and(tagIndex.matching(tagIds, mode));
+    }
+
+    int total = filtered.cardinality();
+    long skip = (long) page * size;
+    var pageItems = new ArrayList<ProductDto>(Math.min(size, total));
+    int seen = 0;
+    for (int ordinal : orders.get(sort)) {
+      if (pageItems.size() == size) {
+        break;
+      }
+      if (filtered.get(ordinal) && seen++ >= skip) {
+        pageItems.add(products.get(ordinal));
+      }
+    }
+    return new Result(pageItems, total, facets);
+  }
+
+  private BitSet match(String query) {
+    var terms = new LinkedHashSet<>(tokenize(query));
+    BitSet result = new BitSet(products.size());
+    if (terms.isEmpty()) {
+      result.set(0, products.size());
+      return result;
+    }
+    boolean first = true;
+    int used = 0;
+    for (String term : terms) {
+      if (used++ == MAX_QUERY_TERMS) {
+        break;
+      }
+      BitSet termHits = new BitSet(products.size());
+      for (int[] ordinals : postings.subMap(term, true, term + Character.MAX_VALUE, false).values()) {
+        for (int ordinal : ordinals) {
+          termHits.set(ordinal);
+        }
+      }
+      if (first) {
+        result = termHits;
+        first = false;
+      } else {
+        result.and(termHits);
+      }
+      if (result.isEmpty()) {
+        break;
+      }
+    }
+    return result;
+  }
+
+  private static String sourceText(ProductDto product) {
+    var sb = new StringBuilder();
+    sb.append(product.title()).append('\n');
+    if (product.description() != null) {
+      sb.append(product.description());
+    }
+    for (TagDto tag : product.tags()) {
+      sb.append('\n').append(tag.name());
+    }
+    for (ProductVariantDto variant : product.variants()) {
+      sb.append('\n').append(variant.name());
+    }
+    return sb.toString();
+  }
+
+  /** Буквы любых алфавитов и цифры; всё остальное — разделители. */
+  static List<String> tokenize(String text) {
+    if (text == null || text.isBlank()) {
+      return List.of();
+    }
+    String normalized = text.toLowerCase(Locale.ROOT).replace('ё', 'е');
+    var tokens = new ArrayList<String>();
+    int start = -1;
+    for (int i = 0; i < normalized.length(); ) {
+      int cp = normalized.codePointAt(i);
+      boolean wordChar = Character.isLetterOrDigit(cp);
+      if (wordChar && start < 0) {
+        start = i;
+      } else if (!wordChar && start >= 0) {
+        tokens.add(normalized.substring(start, i));
+        start = -1;
+      }
+      i += Character.charCount(cp);
+    }
+    if (start >= 0) {
+      tokens.add(normalized.substring(start));
+    }
+    return tokens;
+  }
+
+  private static final class Postings {
+    private int[] ordinals = new int[4];
+    private int size;
+
+    void add(int ordinal) {
+      // товар добавляет токен один раз, а товары обходятся по возрастанию — список уже отсортирован
+      if (size == ordinals.length) {
+        ordinals = Arrays.copyOf(ordinals, size * 2);
+      }
+      ordinals[size++] = ordinal;
+    }
+
+    int[] toArray() {
+      return Arrays.copyOf(ordinals, size);
+    }
+  }
+}
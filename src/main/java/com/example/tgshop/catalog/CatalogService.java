@@ -0,0 +1,147 @@
+package com.example.tgshop.catalog;
+
+import com.example.tgshop.common.UuidUtil;
+import com.example.tgshop.order.ProductSales;
+import com.example.tgshop.order.ProductSalesRepository;
+import com.example.tgshop.product.ProductGraphLoader;
+import com.example.tgshop.tag.TagRepository;
+import jakarta.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import tools.jackson.databind.json.JsonMapper;
+
+/**
+ * Держит в памяти версионированный снимок витрины, чтобы GET /api/products не ходил в MySQL.
+ *
+ * Пересборка идёт на отдельном потоке: несколько событий подряд схлопываются в одну сборку,
+ * а читатели до подмены продолжают получать предыдущий снимок. Поисковый индекс и битовые множества
+ * тегов пересобираются вместе со снимком; текст заново разбирается только у изменившихся товаров.
+ */
+@Service
+@Slf4j
+public class CatalogService {
+
+  private final ProductGraphLoader productGraphLoader;
+  private final TagRepository tagRepository;
+  private final ProductSalesRepository productSalesRepository;
+  private final JsonMapper jsonMapper;
+
+  private final AtomicReference<CatalogSnapshot> current = new AtomicReference<>();
+  private final AtomicLong versions = new AtomicLong();
+  private final AtomicBoolean rebuildPending = new AtomicBoolean();
+  private final ExecutorService rebuildExecutor = Executors.newSingleThreadExecutor(r -> {
+    Thread t = new Thread(r, "catalog-rebuild");
+    t.setDaemon(true);
+    return t;
+  });
+
+  public CatalogService(
+      ProductGraphLoader productGraphLoader,
+      TagRepository tagRepository,
+      ProductSalesRepository productSalesRepository,
+      JsonMapper jsonMapper
+  ) {
+    this.productGraphLoader = productGraphLoader;
+    this.tagRepository = tagRepository;
+    this.productSalesRepository = productSalesRepository;
+    this.jsonMapper = jsonMapper;
+  }
+
+  public CatalogSnapshot snapshot() {
+    CatalogSnapshot snapshot = current.get();
+    if (snapshot != null) {
+      return snapshot;
+    }
+    synchronized (this) {
+      snapshot = current.get();
+      if (snapshot == null) {
+        snapshot = publish(build());
+      }
+      return snapshot;
+    }
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void onApplicationReady() {
+    requestRebuild("startup");
+  }
+
+  @TransactionalEventListener(fallbackExecution = true)
+  public void onCatalogChanged(CatalogChangedEvent event) {
+    requestRebuild(event.reason());
+  }
+
+  private Map<UUID, Long> loadSoldCounts() {
+    var result = productSalesRepository.findAll().stream()
+        .collect(Collectors.toMap(
+            row -> UuidUtil.fromBytes(row.getProductId()),
+            ProductSales::getSold
+        ));
+    log.debug("📚 CATALOG Loaded sold counts for {} products", result.size());
+    return result;
+  }
+
+  private void requestRebuild(String reason) {
+    log.debug("📚 CATALOG Rebuild requested reason={}", reason);
+    if (rebuildPending.compareAndSet(false, true)) {
+      rebuildExecutor.execute(this::rebuild);
+    }
+  }
+
+  private void rebuild() {
+    rebuildPending.set(false);
+    try {
+      publish(build());
+    } catch (Exception e) {
+      log.error("📚 CATALOG Failed to rebuild catalog snapshot", e);
+    }
+  }
+
+  private CatalogSnapshot build() {
+    long version = versions.incrementAndGet();
+    long started = System.nanoTime();
+    var soldCounts = loadSoldCounts();
+    var products = productGraphLoader.findActive().stream()
+        .map(p -> CatalogMapper.toDto(p, soldCounts))
+        .toList();
+    var tags = tagRepository.findAll().stream()
+        .sorted((a, b) -> a.getName().compareToIgnoreCase(b.getName()))
+        .map(CatalogMapper::toTagDto)
+        .toList();
+    var productsJson = EncodedJson.encode(jsonMapper.writeValueAsBytes(products));
+    var tagsJson = EncodedJson.encode(jsonMapper.writeValueAsBytes(tags));
+    var previous = current.get();
+    var previousIndex = previous != null ? previous.searchIndex() : CatalogSearchIndex.empty();
+    var tagIndex = CatalogTagIndex.build(products, tags);
+    var searchIndex = CatalogSearchIndex.build(products, tagIndex, previousIndex);
+    log.info("📚 CATALOG Built snapshot version={} products={} tags={} json={}B gzip={}B in {} ms",
+        version, products.size(), tags.size(), productsJson.identity().length, productsJson.gzip().length,
+        (System.nanoTime() - started) / 1_000_000);
+    log.debug("📚 CATALOG Indexes version={} tokens={} reindexed={} tags={}",
+        version, searchIndex.tokenCount(), searchIndex.reindexedSince(previousIndex), tagIndex.tagCount());
+    return new CatalogSnapshot(version, Instant.now(), products, tags, productsJson, tagsJson, tagIndex, searchIndex);
+  }
+
+  private CatalogSnapshot publish(CatalogSnapshot built) {
+    // более поздняя сборка видела более свежие данные — старую поверх неё не кладём
+    return current.accumulateAndGet(built, (prev, next) ->
+        prev == null || next.version() > prev.version() ? next : prev);
+  }
+
+  @PreDestroy
+  void shutdown() {
+    rebuildExecutor.shutdownNow();
+  }
+}
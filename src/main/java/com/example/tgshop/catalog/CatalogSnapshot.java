@@ -0,0 +1,18 @@
+package com.example.tgshop.catalog;
+
+import com.example.tgshop.api.dto.ProductDto;
+import com.example.tgshop.api.dto.TagDto;
+import java.time.Instant;
+import java.util.List;
+
+/** Неизменяемый снимок витрины: готовые DTO активных товаров и тегов, их закодированные ответы и индексы поиска и тегов. */
+public record CatalogSnapshot(
+    long version,
+    Instant builtAt,
+    List<ProductDto> products,
+    List<TagDto> tags,
+    EncodedJson productsJson,
+    EncodedJson tagsJson,
+    CatalogTagIndex tagIndex,
+    CatalogSearchIndex searchIndex
+) {}
@@ -0,0 +1,106 @@
+package com.example.tgshop.catalog;
+
+import com.example.tgshop.api.dto.ProductDto;
+import com.example.tgshop.api.dto.TagDto;
+import com.example.tgshop.api.dto.TagFacetDto;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Битовые множества товаров по тегам: бит i — товар с позицией i в снимке витрины.
+ *
+ * Членство берётся из тегов товаров снимка (они читаются из product_tags), поэтому индекс
+ * пересобирается вместе со снимком на каждое изменение тегов и товаров. Фильтры «все теги» /
+ * «любой тег» — это AND / OR множеств, счётчик фасета — мощность пересечения с кандидатами.
+ */
+public final class CatalogTagIndex {
+
+  public enum Mode { ALL, ANY }
+
+  private static final CatalogTagIndex EMPTY = new CatalogTagIndex(0, Map.of(), Map.of());
+
+  private final int size;
+  private final Map<UUID, BitSet> members;
+  private final Map<UUID, String> names;
+
+  private CatalogTagIndex(int size, Map<UUID, BitSet> members, Map<UUID, String> names) {
+    this.size = size;
+    this.members = members;
+    this.names = names;
+  }
+
+  public static CatalogTagIndex empty() {
+    return EMPTY;
+  }
+
+  public static CatalogTagIndex build(List<ProductDto> products, List<TagDto> tags) {
+    var members = new LinkedHashMap<UUID, BitSet>();
+    var names = new LinkedHashMap<UUID, String>();
+    for (TagDto tag : tags) {
+      members.put(tag.id(), new BitSet(products.size()));
+      names.put(tag.id(), tag.name());
+    }
+    for (int ordinal = 0; ordinal < products.size(); ordinal++) {
+      for (TagDto tag : products.get(ordinal).tags()) {
+        members.computeIfAbsent(tag.id(), id -> new BitSet(products.size())).set(ordinal);
+        names.putIfAbsent(tag.id(), tag.name());
+      }
+    }
+    return new CatalogTagIndex(products.size(), members, names);
+  }
+
+  /** Товары под фильтр; без тегов — весь снимок. Неизвестный тег ничего не добавляет и всё отсекает в ALL. */
+  public BitSet matching(Collection<UUID> tagIds, Mode mode) {
+    var result = new BitSet(size);
+    if (tagIds == null || tagIds.isEmpty()) {
+      result.set(0, size);
+      return result;
+    }
+    if (mode == Mode.ANY) {
+      for (UUID tagId : tagIds) {
+        BitSet tagBits = members.get(tagId);
+        if (tagBits != null) {
+          result.or(tagBits);
+        }
+      }
+      return result;
+    }
+    result.set(0, size);
+    for (UUID tagId : tagIds) {
+      BitSet tagBits = members.get(tagId);
+      if (tagBits == null) {
+        return new BitSet(size);
+      }
+      result.and(tagBits);
+    }
+    return result;
+  }
+
+  /** Ненулевые счётчики тегов среди {@code candidates}: сначала самые частые, дальше по имени. */
+  public List<TagFacetDto> facets(BitSet candidates) {
+    var facets = new ArrayList<TagFacetDto>();
+    var scratch = new BitSet(size);
+    members.forEach((tagId, tagBits) -> {
+      scratch.clear();
+      scratch.or(tagBits);
+      scratch.and(candidates);
+      int count = scratch.cardinality();
+      if (count > 0) {
+        facets.add(new TagFacetDto(tagId, names.get(tagId), count));
+      }
+    });
+    facets.sort(Comparator.comparingInt(TagFacetDto::count).reversed()
+        .thenComparing(TagFacetDto::name, String.CASE_INSENSITIVE_ORDER));
+    return facets;
+  }
+
+  public int tagCount() {
+    return members.size();
+  }
+}
@@ -0,0 +1,93 @@
+package com.example.tgshop.catalog;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * JSON-ответ, сериализованный и сжатый один раз на версию снимка.
+ * ETag строгий и считается от содержимого, поэтому одинаковые пересборки не сбрасывают клиентские кэши.
+ */
+public record EncodedJson(byte[] identity, byte[] gzip, String etag) {
+
+  private static final String GZIP = "gzip";
+
+  public static EncodedJson encode(byte[] json) {
+    return new EncodedJson(json, gzip(json), "\"" + sha256Prefix(json) + "\"");
+  }
+
+  public String gzipEtag() {
+    return etag.substring(0, etag.length() - 1) + "-" + GZIP + "\"";
+  }
+
+  public ResponseEntity<byte[]> toResponse(String ifNoneMatch, String acceptEncoding) {
+    boolean useGzip = acceptsGzip(acceptEncoding);
+    String currentEtag = useGzip ? gzipEtag() : etag;
+    HttpHeaders headers = new HttpHeaders();
+    headers.setETag(currentEtag);
+    headers.setCacheControl(CacheControl.noCache());
+    headers.setVary(List.of(HttpHeaders.ACCEPT_ENCODING));
+
+    if (matches(ifNoneMatch)) {
+      return new ResponseEntity<>(headers, HttpStatus.NOT_MODIFIED);
+    }
+    headers.setContentType(MediaType.APPLICATION_JSON);
+    if (useGzip) {
+      headers.set(HttpHeaders.CONTENT_ENCODING, GZIP);
+      return new ResponseEntity<>(gzip, headers, HttpStatus.OK);
+    }
+    return new ResponseEntity<>(identity, headers, HttpStatus.OK);
+  }
+
+  private boolean matches(String ifNoneMatch) {
+    if (ifNoneMatch == null || ifNoneMatch.isBlank()) return false;
+    for (String raw : ifNoneMatch.split(",")) {
+      String tag = raw.trim();
+      if (tag.equals("*")) return true;
+      if (tag.startsWith("W/")) tag = tag.substring(2);
+      if (tag.equals(etag) || tag.equals(gzipEtag())) return true;
+    }
+    return false;
+  }
+
+  private static boolean acceptsGzip(String acceptEncoding) {
+    if (acceptEncoding == null || acceptEncoding.isBlank()) return false;
+    for (String raw : acceptEncoding.toLowerCase(Locale.ROOT).split(",")) {
+      String[] parts = raw.trim().split(";");
+      if (!parts[0].trim().equals(GZIP) && !parts[0].trim().equals("*")) continue;
+      boolean disabled = parts.length > 1 && parts[1].replace(" ", "").matches("q=0(\\.0*)?");
+      return !disabled;
+    }
+    return false;
+  }
+
+  private static byte[] gzip(byte[] data) {
+    var out = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+    try (var gz = new GZIPOutputStream(out)) {
+      gz.write(data);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return out.toByteArray();
+  }
+
+  private static String sha256Prefix(byte[] data) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+      return HexFormat.of().formatHex(digest, 0, 16);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
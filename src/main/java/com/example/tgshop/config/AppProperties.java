@@ -1,8 +1,16 @@
 package com.example.tgshop.config;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import org.springframework.boot.context.properties.ConfigurationProperties;
@@ -30,14 +38,74 @@ public class AppProperties {
     private String botUsername;
     private String defaultAdminChatId;
     private String adminUserIds;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private Set<Long> adminUserIdSet = Set.of();
+    /** Сколько держать в памяти картинки, найденные в t.me-посте. */
+    private Duration postCacheTtl = Duration.ofMinutes(30);
+    private long postCacheMaxSize = 1000;
+    /** Повторы уведомлений из notification_outbox: число попыток и базовая задержка (удваивается). */
+    private int outboxMaxAttempts = 8;
+    private Duration outboxBackoff = Duration.ofSeconds(10);
+    private long outboxPollIntervalMs = 5000;
+    /** Сколько уведомлений отправляется одновременно: ожидание лимита одного чата не держит остальные. */
+    private int outboxConcurrency = 32;
+    /** Сколько хранить отправленные уведомления, прежде чем удалить их из notification_outbox. */
+    private Duration outboxSentRetention = Duration.ofDays(7);
+    /** Лимиты Bot API: ~30 сообщений/с на бота и ~1/с в один чат (с небольшим запасом на всплеск). */
+    private double sendGlobalPerSecond = 25;
+    private double sendPerChatPerSecond = 1;
+    private int sendPerChatBurst = 3;
+    /** Сколько раз повторять вызов после 429 Too Many Requests. */
+    private int sendMaxRetries = 5;
+    /** Сколько апдейтов бота может обрабатываться одновременно, прежде чем long polling встанет на паузу. */
+    private int updateMaxInFlight = 256;
+    /**
+     * polling — long polling (локальный запуск), webhook — Telegram сам шлёт апдейты на
+     * webhookUrl + webhookPath. Секрет вебхука по умолчанию выводится из токена бота.
+     */
+    private String mode = "polling";
+    private String webhookUrl;
+    private String webhookPath = "/api/telegram/webhook";
+    private String webhookSecret;
+    /** Связи сообщений для переписки по заказу (tg_message_links) и ожидающие ответа запросы ТТН/причины. */
+    private Duration messageLinkTtl = Duration.ofDays(30);
+    private Duration pendingPromptTtl = Duration.ofDays(2);
+    private long messageLinkCacheSize = 50_000;
+    private Duration messageLinkCacheTtl = Duration.ofHours(6);
+
+    /** Список разбирается один раз при биндинге, а не на каждой проверке прав. */
+    public void setAdminUserIds(String adminUserIds) {
+      this.adminUserIds = adminUserIds;
+      this.adminUserIdSet = adminUserIds == null || adminUserIds.isBlank()
+          ? Set.of()
+          : Arrays.stream(adminUserIds.split(","))
+              .map(String::trim)
+              .filter(s -> !s.isEmpty())
+              .map(Long::parseLong)
+              .collect(Collectors.toUnmodifiableSet());
+    }
 
     public Set<Long> adminUserIdSet() {
-      if (adminUserIds == null || adminUserIds.isBlank()) return Set.of();
-      return Arrays.stream(adminUserIds.split(","))
-          .map(String::trim)
-          .filter(s -> !s.isEmpty())
-          .map(Long::parseLong)
-          .collect(Collectors.toSet());
+      return adminUserIdSet;
+    }
+
+    public boolean isWebhookMode() {
+      return "webhook".equalsIgnoreCase(mode);
+    }
+
+    /** secret_token для setWebhook: допустимы только [A-Za-z0-9_-], поэтому производный — hex от SHA-256. */
+    public String webhookSecret() {
+      if (webhookSecret != null && !webhookSecret.isBlank()) {
+        return webhookSecret;
+      }
+      try {
+        byte[] digest = MessageDigest.getInstance("SHA-256")
+            .digest(("webhook:" + botToken).getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest);
+      } catch (NoSuchAlgorithmException e) {
+        throw new IllegalStateException(e);
+      }
     }
   }
 
@@ -45,11 +113,35 @@ public class AppProperties {
   public static class Security {
     private boolean allowUnsignedInitData;
     private String adminPassword;
+    /** initData старше auth_date + maxAge отклоняется; до этого момента результат проверки кэшируется. */
+    private Duration initDataMaxAge = Duration.ofHours(24);
+    private long initDataCacheSize = 10_000;
+    /** Срок жизни токена админки и ключ подписи (пусто — выводится из токена бота). */
+    private Duration adminTokenTtl = Duration.ofHours(12);
+    private String adminTokenSecret;
   }
 
   @Getter @Setter
   public static class Media {
     private String baseUrl;
     private String urlPrefix = "/media";
+    /** db — байты в media_images.data, fs — файлы в storageDir. */
+    private String storage = "db";
+    private String storageDir = "media";
+    private boolean migrateToFs;
+    /** Бюджет кэша горячих картинок в байтах и предельный размер одной картинки в нём. */
+    private long cacheMaxBytes = 64L * 1024 * 1024;
+    private long cacheMaxEntryBytes = 2L * 1024 * 1024;
+    /** Ширины уменьшенных копий, которые строятся при загрузке; пустой список отключает ресайз. */
+    private List<Integer> derivativeWidths = new ArrayList<>(List.of(320, 640, 1280));
+    private float derivativeQuality = 0.82f;
+    /** Общий дедлайн на скачивание всех картинок товара и лимит параллельных запросов к одному хосту. */
+    private Duration downloadDeadline = Duration.ofSeconds(60);
+    private int downloadPerHostConcurrency = 4;
+    /** Фоновая загрузка: число воркеров, попыток и базовая задержка перед повтором (удваивается). */
+    private int ingestWorkers = 2;
+    private int ingestMaxAttempts = 5;
+    private Duration ingestBackoff = Duration.ofSeconds(30);
+    private long ingestPollIntervalMs = 2000;
   }
 }
@@ -1,19 +1,28 @@
 package com.example.tgshop.config;
 
 import com.example.tgshop.tg.ShopBot;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.telegram.telegrambots.meta.TelegramBotsApi;
+import org.telegram.telegrambots.meta.api.methods.updates.SetWebhook;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 import org.telegram.telegrambots.updatesreceivers.DefaultBotSession;
 
 @Configuration
+@Slf4j
 public class TelegramBotConfig {
 
     @Bean
-    public TelegramBotsApi telegramBotsApi(ShopBot shopBot) throws TelegramApiException {
+    public TelegramBotsApi telegramBotsApi(ShopBot shopBot, AppProperties props) throws TelegramApiException {
         TelegramBotsApi botsApi = new TelegramBotsApi(DefaultBotSession.class);
+        var telegram = props.getTelegram();
+        if (telegram.isWebhookMode()) {
+            registerWebhook(shopBot, telegram);
+            return botsApi;
+        }
         try {
+            // registerBot сам снимает ранее выставленный webhook, иначе getUpdates вернёт 409
             botsApi.registerBot(shopBot);
             System.out.println("Bot registered successfully");
             return botsApi;
@@ -21,4 +30,22 @@ public class TelegramBotConfig {
             throw new RuntimeException("Failed to register bot", e);
         }
     }
-}
\ No newline at end of file
+
+    private static void registerWebhook(ShopBot shopBot, AppProperties.Telegram telegram) {
+        String baseUrl = telegram.getWebhookUrl();
+        if (baseUrl == null || baseUrl.isBlank()) {
+            throw new IllegalStateException("app.telegram.webhook-url is required in webhook mode");
+        }
+        String url = baseUrl.replaceAll("/+$", "") + telegram.getWebhookPath();
+        try {
+            shopBot.execute(SetWebhook.builder()
+                .url(url)
+                .secretToken(telegram.webhookSecret())
+                .maxConnections(Math.min(100, telegram.getUpdateMaxInFlight()))
+                .build());
+            log.info("🤖 TG Webhook registered url={}", url);
+        } catch (TelegramApiException e) {
+            throw new RuntimeException("Failed to register webhook", e);
+        }
+    }
+}
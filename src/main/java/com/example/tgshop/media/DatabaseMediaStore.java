@@ -0,0 +1,33 @@
+package com.example.tgshop.media;
+
+import java.util.Optional;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+/** Прежнее поведение: байты в LONGBLOB-колонке media_images.data. */
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "app.media", name = "storage", havingValue = "db", matchIfMissing = true)
+public class DatabaseMediaStore implements MediaStore {
+
+  private final MediaImageRepository mediaImageRepository;
+
+  @Override
+  public void write(MediaImage image, byte[] data) {
+    image.setData(data);
+  }
+
+  @Override
+  public Optional<Resource> read(String filename) {
+    return mediaImageRepository.findDataByFilename(filename)
+        .map(ByteArrayResource::new);
+  }
+
+  @Override
+  public void delete(String filename) {
+    // байты удаляются вместе с записью
+  }
+}
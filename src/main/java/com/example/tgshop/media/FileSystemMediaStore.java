@@ -0,0 +1,67 @@
+package com.example.tgshop.media;
+
+import com.example.tgshop.config.AppProperties;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+/** Байты изображений в файлах каталога app.media.storage-dir; отдаются потоково без загрузки в heap. */
+@Component
+@Slf4j
+@ConditionalOnProperty(prefix = "app.media", name = "storage", havingValue = "fs")
+public class FileSystemMediaStore implements MediaStore {
+
+  private final Path root;
+
+  public FileSystemMediaStore(AppProperties props) throws IOException {
+    this.root = Path.of(props.getMedia().getStorageDir()).toAbsolutePath().normalize();
+    Files.createDirectories(root);
+    log.info("🖼️ Media files stored in {}", root);
+  }
+
+  @Override
+  public void write(MediaImage image, byte[] data) throws IOException {
+    Path target = resolve(image.getFilename());
+    Path tmp = Files.createTempFile(root, ".upload-", ".tmp");
+    try {
+      Files.write(tmp, data);
+      Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+    image.setData(null);
+  }
+
+  @Override
+  public Optional<Resource> read(String filename) {
+    Path path = resolve(filename);
+    if (!Files.isRegularFile(path)) {
+      return Optional.empty();
+    }
+    return Optional.of(new FileSystemResource(path));
+  }
+
+  @Override
+  public void delete(String filename) {
+    try {
+      Files.deleteIfExists(resolve(filename));
+    } catch (IOException e) {
+      log.warn("🖼️ Failed to delete media file filename={}", filename, e);
+    }
+  }
+
+  private Path resolve(String filename) {
+    Path path = root.resolve(filename).normalize();
+    if (!path.getParent().equals(root)) {
+      throw new IllegalArgumentException("Invalid media filename: " + filename);
+    }
+    return path;
+  }
+}
@@ -0,0 +1,80 @@
+package com.example.tgshop.media;
+
+import com.example.tgshop.common.UuidUtil;
+import jakarta.persistence.*;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/** Фоновая загрузка картинок товара: резолв t.me-постов, скачивание и привязка к товару. */
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+@Table(name = "image_ingest_jobs")
+public class ImageIngestJob {
+
+  public static final String PENDING = "PENDING";
+  public static final String RUNNING = "RUNNING";
+  public static final String DONE = "DONE";
+  public static final String FAILED = "FAILED";
+  /** Товар отредактировали ещё раз — результат этой задачи уже не нужен. */
+  public static final String SUPERSEDED = "SUPERSEDED";
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private Long id;
+
+  @Column(name = "product_id", nullable = false, columnDefinition = "BINARY(16)")
+  private byte[] productId;
+
+  /** Исходные URL по одному на строку. */
+  @Column(name = "source_urls", nullable = false, columnDefinition = "TEXT")
+  private String sourceUrls;
+
+  @Column(name = "replace_existing", nullable = false)
+  private boolean replaceExisting;
+
+  @Column(nullable = false, length = 16)
+  private String status = PENDING;
+
+  @Column(nullable = false)
+  private int attempts;
+
+  @Column(name = "next_attempt_at", nullable = false)
+  private Instant nextAttemptAt;
+
+  @Column(name = "last_error", length = 1000)
+  private String lastError;
+
+  @Column(name = "created_at", nullable = false)
+  private Instant createdAt;
+
+  @Column(name = "updated_at", nullable = false)
+  private Instant updatedAt;
+
+  @PrePersist
+  void prePersist() {
+    Instant now = Instant.now();
+    if (createdAt == null) createdAt = now;
+    if (nextAttemptAt == null) nextAttemptAt = now;
+    updatedAt = now;
+  }
+
+  @PreUpdate
+  void preUpdate() {
+    updatedAt = Instant.now();
+  }
+
+  public UUID productUuid() {
+    return UuidUtil.fromBytes(productId);
+  }
+
+  public List<String> sourceUrlList() {
+    return Arrays.stream(sourceUrls.split("\n")).filter(s -> !s.isBlank()).toList();
+  }
+}
@@ -0,0 +1,65 @@
+package com.example.tgshop.media;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+public interface ImageIngestJobRepository extends JpaRepository<ImageIngestJob, Long> {
+
+  /** Ожидающие и взятые в работу, чья аренда истекла (инстанс упал посреди загрузки). */
+  @Query("select j.id from ImageIngestJob j where j.status in ('PENDING', 'RUNNING') and j.nextAttemptAt <= :now "
+      + "order by j.id")
+  List<Long> findDueIds(@Param("now") Instant now, Pageable pageable);
+
+  /**
+   * Захват задачи до {@code leaseUntil}: ровно один поллер переводит её в RUNNING, 0 — её уже взял другой.
+   * Пока аренда не истекла, задача никому больше не выдаётся.
+   */
+  @Modifying
+  @Transactional
+  @Query("update ImageIngestJob j set j.status = 'RUNNING', j.attempts = j.attempts + 1, "
+      + "j.nextAttemptAt = :leaseUntil, j.updatedAt = :now "
+      + "where j.id = :id and j.status in ('PENDING', 'RUNNING') and j.nextAttemptAt <= :now")
+  int claim(@Param("id") Long id, @Param("now") Instant now, @Param("leaseUntil") Instant leaseUntil);
+
+  /**
+   * Завершает попытку {@code attempt}, если задачу за это время не отменили и не перезахватили после
+   * истечения аренды; 1 — результат можно привязывать к товару.
+   */
+  @Modifying
+  @Transactional
+  @Query("update ImageIngestJob j set j.status = 'DONE', j.lastError = null, j.updatedAt = :now "
+      + "where j.id = :id and j.status = 'RUNNING' and j.attempts = :attempt")
+  int complete(@Param("id") Long id, @Param("attempt") int attempt, @Param("now") Instant now);
+
+  /** Возвращает неудачную попытку в очередь (или в FAILED) с теми же условиями, что и {@link #complete}. */
+  @Modifying
+  @Transactional
+  @Query("update ImageIngestJob j set j.status = :status, j.lastError = :error, j.nextAttemptAt = :nextAttemptAt, "
+      + "j.updatedAt = :now where j.id = :id and j.status = 'RUNNING' and j.attempts = :attempt")
+  int fail(
+      @Param("id") Long id,
+      @Param("attempt") int attempt,
+      @Param("status") String status,
+      @Param("error") String error,
+      @Param("nextAttemptAt") Instant nextAttemptAt,
+      @Param("now") Instant now
+  );
+
+  @Modifying
+  @Transactional
+  @Query("update ImageIngestJob j set j.status = 'SUPERSEDED', j.updatedAt = :now "
+      + "where j.productId = :productId and j.status in ('PENDING', 'RUNNING')")
+  int supersede(@Param("productId") byte[] productId, @Param("now") Instant now);
+
+  @Query("select j from ImageIngestJob j where j.status in :statuses and j.updatedAt >= :since order by j.id desc")
+  List<ImageIngestJob> findRecent(@Param("statuses") Collection<String> statuses, @Param("since") Instant since);
+}
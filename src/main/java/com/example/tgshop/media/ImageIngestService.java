@@ -0,0 +1,237 @@
+package com.example.tgshop.media;
+
+import com.example.tgshop.catalog.CatalogChangedEvent;
+import com.example.tgshop.common.UuidUtil;
+import com.example.tgshop.config.AppProperties;
+import com.example.tgshop.product.ProductImage;
+import com.example.tgshop.product.ProductRepository;
+import com.example.tgshop.tg.TgPostImageResolver;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Очередь фоновой загрузки картинок товаров. Задачи лежат в image_ingest_jobs и переживают рестарт;
+ * поллер забирает их условным UPDATE и выполняет на пуле из ingest-workers потоков,
+ * неудачные попытки повторяются с экспоненциальной задержкой.
+ *
+ * Захват даёт аренду: если инстанс упал посреди загрузки, задача снова станет due по её истечении,
+ * а задачи живых инстансов при рестарте соседа не трогаются. Результат привязывается к товару только
+ * после условного UPDATE в DONE — отменённая или перезахваченная попытка его не перезапишет.
+ */
+@Service
+@Slf4j
+public class ImageIngestService {
+
+  private static final List<String> VISIBLE_STATUSES =
+      List.of(ImageIngestJob.PENDING, ImageIngestJob.RUNNING, ImageIngestJob.FAILED);
+  private static final Duration VISIBLE_FOR = Duration.ofHours(24);
+  private static final Duration CLAIM_LEASE = Duration.ofMinutes(10);
+
+  private final ImageIngestJobRepository jobRepository;
+  private final TgPostImageResolver tgPostImageResolver;
+  private final ImageStorageService imageStorageService;
+  private final ProductRepository productRepository;
+  private final ApplicationEventPublisher eventPublisher;
+  private final TransactionTemplate transactionTemplate;
+  private final AppProperties props;
+
+  private final int workers;
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final ExecutorService executor;
+
+  public ImageIngestService(
+      ImageIngestJobRepository jobRepository,
+      TgPostImageResolver tgPostImageResolver,
+      ImageStorageService imageStorageService,
+      ProductRepository productRepository,
+      ApplicationEventPublisher eventPublisher,
+      PlatformTransactionManager transactionManager,
+      AppProperties props
+  ) {
+    this.jobRepository = jobRepository;
+    this.tgPostImageResolver = tgPostImageResolver;
+    this.imageStorageService = imageStorageService;
+    this.productRepository = productRepository;
+    this.eventPublisher = eventPublisher;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    this.props = props;
+    this.workers = Math.max(1, props.getMedia().getIngestWorkers());
+    AtomicInteger threadIds = new AtomicInteger();
+    this.executor = Executors.newFixedThreadPool(workers, r -> {
+      Thread t = new Thread(r, "image-ingest-" + threadIds.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  /** Ставит загрузку картинок товара в очередь; незавершённые задачи этого товара отменяются. */
+  public ImageIngestJob enqueue(UUID productId, List<String> urls, boolean replaceExisting) {
+    byte[] id = UuidUtil.toBytes(productId);
+    jobRepository.supersede(id, Instant.now());
+    ImageIngestJob job = new ImageIngestJob();
+    job.setProductId(id);
+    job.setSourceUrls(String.join("\n", urls.stream().filter(u -> u != null && !u.isBlank()).map(String::trim).toList()));
+    job.setReplaceExisting(replaceExisting);
+    var saved = jobRepository.save(job);
+    log.info("🖼️ Enqueued image ingest job id={} productId={} urls={}", saved.getId(), productId, urls.size());
+    wakeUp();
+    return saved;
+  }
+
+  /** Картинки товара задали синхронно — результат фоновых задач больше не нужен. */
+  public void supersede(UUID productId) {
+    int updated = jobRepository.supersede(UuidUtil.toBytes(productId), Instant.now());
+    if (updated > 0) {
+      log.debug("🖼️ Superseded {} image ingest jobs productId={}", updated, productId);
+    }
+  }
+
+  /** Активные и упавшие за последние сутки задачи — для админки. */
+  public List<ImageIngestJob> recentJobs() {
+    return jobRepository.findRecent(VISIBLE_STATUSES, Instant.now().minus(VISIBLE_FOR));
+  }
+
+  @Scheduled(fixedDelayString = "${app.media.ingest-poll-interval-ms:2000}")
+  public synchronized void poll() {
+    int free = workers - inFlight.get();
+    if (free <= 0) return;
+    Instant now = Instant.now();
+    for (Long id : jobRepository.findDueIds(now, PageRequest.of(0, free))) {
+      if (jobRepository.claim(id, now, now.plus(CLAIM_LEASE)) == 0) continue;
+      inFlight.incrementAndGet();
+      executor.execute(() -> {
+        try {
+          run(id);
+        } finally {
+          inFlight.decrementAndGet();
+        }
+      });
+    }
+  }
+
+  private void wakeUp() {
+    // новую задачу видно поллеру только после коммита — будим его не раньше
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCommit() {
+          CompletableFuture.runAsync(ImageIngestService.this::poll);
+        }
+      });
+    } else {
+      CompletableFuture.runAsync(this::poll);
+    }
+  }
+
+  private void run(Long jobId) {
+    ImageIngestJob job = jobRepository.findById(jobId).orElse(null);
+    if (job == null) return;
+    int attempt = job.getAttempts();
+    UUID productId = job.productUuid();
+    long started = System.nanoTime();
+    List<String> storedUrls = List.of();
+    try {
+      var resolvedUrls = tgPostImageResolver.resolveImages(job.sourceUrlList());
+      // ссылки на старые картинки снимаем только после привязки: задачу могли отменить новой правкой
+      storedUrls = imageStorageService.downloadImages(productId, resolvedUrls, false);
+      var toApply = storedUrls;
+      Boolean applied = transactionTemplate.execute(status -> apply(job, attempt, toApply));
+      if (Boolean.TRUE.equals(applied)) {
+        if (job.isReplaceExisting()) {
+          imageStorageService.retainOnly(productId, storedUrls);
+        }
+        eventPublisher.publishEvent(new CatalogChangedEvent("product images ingested"));
+        log.info("🖼️ Image ingest job id={} productId={} stored {} images in {} ms",
+            jobId, productId, storedUrls.size(), (System.nanoTime() - started) / 1_000_000);
+      } else {
+        releaseUnattached(productId, storedUrls);
+      }
+    } catch (Exception e) {
+      log.warn("🖼️ Image ingest job id={} productId={} attempt={} failed", jobId, productId, job.getAttempts(), e);
+      releaseUnattached(productId, storedUrls);
+      fail(jobId, attempt, e);
+    }
+  }
+
+  /** Результат не привязан к товару: снимаем ссылки, поставленные при загрузке, кроме уже висящих на товаре. */
+  private void releaseUnattached(UUID productId, List<String> storedUrls) {
+    if (storedUrls.isEmpty()) return;
+    try {
+      Set<String> attached = transactionTemplate.execute(status ->
+          productRepository.findById(UuidUtil.toBytes(productId))
+              .map(p -> p.getImages().stream().map(ProductImage::getUrl).collect(Collectors.toSet()))
+              .orElse(Set.of()));
+      var unattached = storedUrls.stream().filter(url -> !attached.contains(url)).toList();
+      imageStorageService.releaseUrls(productId, unattached);
+      log.debug("🖼️ Released {} unattached images productId={}", unattached.size(), productId);
+    } catch (Exception e) {
+      log.warn("🖼️ Failed to release unattached images productId={}", productId, e);
+    }
+  }
+
+  /**
+   * Условный UPDATE в DONE держит строку задачи до коммита: supersede из параллельной правки товара
+   * либо успел отменить задачу и картинки не привязываются, либо ждёт, пока они привяжутся.
+   */
+  private boolean apply(ImageIngestJob job, int attempt, List<String> storedUrls) {
+    Instant now = Instant.now();
+    var product = productRepository.findById(job.getProductId()).orElse(null);
+    if (product == null) {
+      jobRepository.fail(job.getId(), attempt, ImageIngestJob.FAILED, "Product not found", now, now);
+      return false;
+    }
+    if (jobRepository.complete(job.getId(), attempt, now) == 0) {
+      log.debug("🖼️ Image ingest job id={} attempt={} superseded, result discarded", job.getId(), attempt);
+      return false;
+    }
+    product.getImages().clear();
+    int i = 0;
+    for (String url : storedUrls) {
+      var img = new ProductImage();
+      img.setProduct(product);
+      img.setUrl(url);
+      img.setSortOrder(i++);
+      product.getImages().add(img);
+    }
+    productRepository.save(product);
+    return true;
+  }
+
+  /** Отменённую или перезахваченную попытку не трогаем — её статус уже выставил кто-то другой. */
+  private void fail(Long jobId, int attempt, Exception error) {
+    String message = String.valueOf(error.getMessage());
+    String lastError = message.length() > 1000 ? message.substring(0, 1000) : message;
+    Instant now = Instant.now();
+    if (attempt >= props.getMedia().getIngestMaxAttempts()) {
+      if (jobRepository.fail(jobId, attempt, ImageIngestJob.FAILED, lastError, now, now) > 0) {
+        log.error("🖼️ Image ingest job id={} gave up after {} attempts", jobId, attempt);
+      }
+      return;
+    }
+    Duration delay = props.getMedia().getIngestBackoff().multipliedBy(1L << Math.min(attempt - 1, 10));
+    jobRepository.fail(jobId, attempt, ImageIngestJob.PENDING, lastError, now.plus(delay), now);
+  }
+
+  @PreDestroy
+  void shutdown() {
+    executor.shutdownNow();
+  }
+}
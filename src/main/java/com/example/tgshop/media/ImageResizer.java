@@ -0,0 +1,109 @@
+package com.example.tgshop.media;
+
+import com.example.tgshop.config.AppProperties;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+/**
+ * Уменьшенные копии картинок фиксированной ширины для сетки каталога.
+ * Кодируются в JPEG: в JDK нет WebP-кодировщика, а JPEG нужного размера уже даёт основной выигрыш.
+ */
+@Component
+@Slf4j
+public class ImageResizer {
+
+  public static final String CONTENT_TYPE = "image/jpeg";
+  public static final String EXTENSION = ".jpg";
+
+  private final List<Integer> widths;
+  private final float quality;
+
+  public ImageResizer(AppProperties props) {
+    this.widths = props.getMedia().getDerivativeWidths().stream().sorted().toList();
+    this.quality = props.getMedia().getDerivativeQuality();
+  }
+
+  /** Возвращает копии для всех ширин меньше исходной; пустой список, если формат не читается ImageIO. */
+  public List<Derivative> resize(byte[] source) {
+    if (widths.isEmpty()) return List.of();
+    BufferedImage original;
+    try {
+      original = ImageIO.read(new ByteArrayInputStream(source));
+    } catch (IOException | RuntimeException e) {
+      log.warn("🖼️ Failed to decode image for resizing", e);
+      return List.of();
+    }
+    if (original == null) {
+      log.debug("🖼️ Skip resizing: unsupported image format");
+      return List.of();
+    }
+
+    List<Derivative> result = new ArrayList<>();
+    for (int width : widths) {
+      if (width >= original.getWidth()) break;
+      int height = Math.max(1, Math.round(original.getHeight() * (width / (float) original.getWidth())));
+      try {
+        result.add(new Derivative(width, encodeJpeg(scale(original, width, height))));
+      } catch (IOException e) {
+        log.warn("🖼️ Failed to encode resized image width={}", width, e);
+      }
+    }
+    return result;
+  }
+
+  private static BufferedImage scale(BufferedImage source, int width, int height) {
+    // уменьшаем ступенями не более чем вдвое: одношаговый bilinear на большом коэффициенте даёт «мыло» и муар
+    BufferedImage current = source;
+    int w = source.getWidth();
+    int h = source.getHeight();
+    do {
+      w = Math.max(width, w / 2);
+      h = Math.max(height, h / 2);
+      BufferedImage next = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+      Graphics2D g = next.createGraphics();
+      try {
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, w, h);
+        g.drawImage(current, 0, 0, w, h, null);
+      } finally {
+        g.dispose();
+      }
+      current = next;
+    } while (w != width || h != height);
+    return current;
+  }
+
+  private byte[] encodeJpeg(BufferedImage image) throws IOException {
+    ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+    var out = new ByteArrayOutputStream();
+    try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+      writer.setOutput(ios);
+      ImageWriteParam param = writer.getDefaultWriteParam();
+      param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+      param.setCompressionQuality(quality);
+      param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+      writer.write(null, new IIOImage(image, null, null), param);
+    } finally {
+      writer.dispose();
+    }
+    return out.toByteArray();
+  }
+
+  public record Derivative(int width, byte[] data) {}
+}
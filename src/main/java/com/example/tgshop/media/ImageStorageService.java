@@ -2,6 +2,8 @@ package com.example.tgshop.media;
 
 import com.example.tgshop.common.UuidUtil;
 import com.example.tgshop.config.AppProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import java.io.IOException;
 import java.net.URI;
 import java.net.http.HttpClient;
@@ -9,11 +11,28 @@ import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 
 @Service
@@ -21,15 +40,20 @@ import org.springframework.stereotype.Service;
 @Slf4j
 public class ImageStorageService {
 
-  private static final Duration TIMEOUT = Duration.ofSeconds(20);
   private static final String USER_AGENT =
       "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36";
 
   private final AppProperties props;
   private final MediaImageRepository mediaImageRepository;
+  private final MediaStore mediaStore;
+  private final MediaCache mediaCache;
+  private final ProductMediaRepository productMediaRepository;
+  private final ImageResizer imageResizer;
   private final HttpClient httpClient = HttpClient.newBuilder()
       .followRedirects(HttpClient.Redirect.NORMAL)
       .build();
+  /** Семафор хоста живёт, пока его держит или ждёт загрузка: простаивающие хосты уходят из кэша. */
+  private final Cache<String, Semaphore> hostPermits = Caffeine.newBuilder().weakValues().build();
 
   public List<String> downloadImages(UUID productId, List<String> urls) {
     return downloadImages(productId, urls, false);
@@ -39,54 +63,242 @@ public class ImageStorageService {
     if (urls == null || urls.isEmpty()) return List.of();
     String prefix = normalizePrefix(props.getMedia().getUrlPrefix());
     String baseUrl = props.getMedia().getBaseUrl();
-    boolean hasRemote = urls.stream().anyMatch(url -> url != null && !isLocalUrl(url, baseUrl, prefix));
-    if (replaceExisting && hasRemote) {
-      deleteImages(productId);
-    }
+    // сначала скачиваем всё параллельно и только потом пишем: при любой ошибке хранилище не трогаем.
+    // Старые ссылки снимаются в конце, уже после новых, — одинаковый контент не удаляется и не пишется заново.
+    Map<Integer, Downloaded> downloaded = fetchAll(productId, urls, baseUrl, prefix);
+
+    byte[] id = UuidUtil.toBytes(productId);
     List<String> result = new ArrayList<>();
+    Set<String> referenced = new LinkedHashSet<>();
     for (int i = 0; i < urls.size(); i++) {
       String sourceUrl = urls.get(i);
       if (sourceUrl == null || sourceUrl.isBlank()) continue;
       if (isLocalUrl(sourceUrl, baseUrl, prefix)) {
+        String filename = localFilename(sourceUrl);
+        if (!addRef(id, filename)) {
+          log.warn("🖼️ Skipping missing local image url={} productId={}", sourceUrl, productId);
+          continue;
+        }
         result.add(sourceUrl.trim());
+        referenced.add(filename);
         continue;
       }
+      String filename;
       try {
-        HttpRequest request = HttpRequest.newBuilder(URI.create(sourceUrl))
-            .timeout(TIMEOUT)
-            .header("User-Agent", USER_AGENT)
-            .GET()
-            .build();
-        HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
-        if (response.statusCode() < 200 || response.statusCode() >= 300) {
-          throw new IllegalStateException("Bad response: " + response.statusCode());
+        filename = store(productId, sourceUrl, downloaded.get(i));
+        if (!addRef(id, filename)) {
+          // файл удалили между store и addRef (последний товар отпустил тот же контент) — пишем заново
+          filename = store(productId, sourceUrl, downloaded.get(i));
+          if (!addRef(id, filename)) {
+            throw new IOException("Stored image disappeared: " + filename);
+          }
         }
-        String contentType = response.headers().firstValue("Content-Type").orElse(null);
-        String ext = resolveExtension(sourceUrl, contentType);
-        String filename = productId + "_" + (i + 1) + ext;
-        MediaImage image = new MediaImage();
-        image.setProductId(UuidUtil.toBytes(productId));
-        image.setFilename(filename);
-        image.setContentType(resolveContentType(contentType, ext));
-        image.setData(response.body());
-        mediaImageRepository.save(image);
-        result.add(buildPublicUrl(baseUrl, prefix, filename));
-      } catch (InterruptedException e) {
-        Thread.currentThread().interrupt();
-        log.error("🖼️ Failed to download image url={} productId={}", sourceUrl, productId, e);
-        throw new IllegalStateException("Failed to download image: " + sourceUrl, e);
       } catch (IOException e) {
-        log.error("🖼️ Failed to download image url={} productId={}", sourceUrl, productId, e);
-        throw new IllegalStateException("Failed to download image: " + sourceUrl, e);
+        log.error("🖼️ Failed to store image url={} productId={}", sourceUrl, productId, e);
+        throw new IllegalStateException("Failed to store image: " + sourceUrl, e);
       }
+      referenced.add(filename);
+      result.add(buildPublicUrl(baseUrl, prefix, filename));
+    }
+
+    if (replaceExisting) {
+      releaseAllExcept(id, referenced);
     }
     return result;
   }
 
+  /** Есть ли среди URL внешние, которые придётся скачивать. */
+  public boolean needsDownload(List<String> urls) {
+    if (urls == null) return false;
+    String prefix = normalizePrefix(props.getMedia().getUrlPrefix());
+    String baseUrl = props.getMedia().getBaseUrl();
+    return urls.stream().anyMatch(url -> url != null && !url.isBlank() && !isLocalUrl(url, baseUrl, prefix));
+  }
+
+  /** Оставляет товару только перечисленные сохранённые картинки, остальные ссылки снимает. */
+  public void retainOnly(UUID productId, List<String> storedUrls) {
+    Set<String> keep = new LinkedHashSet<>();
+    storedUrls.forEach(url -> keep.add(localFilename(url)));
+    releaseAllExcept(UuidUtil.toBytes(productId), keep);
+  }
+
+  /** Снимает ссылки товара на перечисленные сохранённые картинки; файлы без ссылок удаляются. */
+  public void releaseUrls(UUID productId, Collection<String> storedUrls) {
+    if (storedUrls.isEmpty()) return;
+    Set<String> filenames = new LinkedHashSet<>();
+    storedUrls.forEach(url -> filenames.add(localFilename(url)));
+    release(UuidUtil.toBytes(productId), new ArrayList<>(filenames));
+  }
+
+  /** Ссылка ставится, только пока файл есть; false — файла уже нет. */
+  private boolean addRef(byte[] productId, String filename) {
+    return productMediaRepository.addRef(productId, filename) > 0
+        || productMediaRepository.existsByProductIdAndFilename(productId, filename);
+  }
+
+  private void releaseAllExcept(byte[] productId, Set<String> keep) {
+    var stale = new ArrayList<>(productMediaRepository.findFilenamesByProductId(productId));
+    stale.removeAll(keep);
+    release(productId, stale);
+  }
+
+  /**
+   * Кладёт файл под именем sha256(байты) + расширение. Если такой контент уже сохранён
+   * (тот же товар перезаливается или картинка общая у нескольких товаров), ничего не пишет.
+   */
+  private String store(UUID productId, String sourceUrl, Downloaded file) throws IOException {
+    String ext = resolveExtension(sourceUrl, file.contentType());
+    String filename = sha256Hex(file.body()) + ext;
+    if (mediaImageRepository.existsByFilename(filename)) {
+      log.debug("🖼️ Reusing stored image filename={} productId={}", filename, productId);
+      return filename;
+    }
+    MediaImage image = new MediaImage();
+    image.setProductId(UuidUtil.toBytes(productId));
+    image.setFilename(filename);
+    image.setContentType(resolveContentType(file.contentType(), ext));
+    image.setSizeBytes((long) file.body().length);
+    mediaStore.write(image, file.body());
+    try {
+      mediaImageRepository.save(image);
+    } catch (DataIntegrityViolationException e) {
+      // тот же контент параллельно сохранил другой запрос — его строка ничем не хуже нашей
+      log.debug("🖼️ Image already stored concurrently filename={}", filename);
+      return filename;
+    }
+    mediaCache.invalidate(filename);
+    storeDerivatives(productId, filename, file.body());
+    return filename;
+  }
+
+  /**
+   * Качает все внешние URL на виртуальных потоках в пределах общего дедлайна.
+   * Одновременных запросов к одному хосту не больше download-per-host-concurrency.
+   */
+  private Map<Integer, Downloaded> fetchAll(UUID productId, List<String> urls, String baseUrl, String prefix) {
+    long deadline = System.nanoTime() + props.getMedia().getDownloadDeadline().toNanos();
+    Map<Integer, Future<Downloaded>> futures = new LinkedHashMap<>();
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (int i = 0; i < urls.size(); i++) {
+        String sourceUrl = urls.get(i);
+        if (sourceUrl == null || sourceUrl.isBlank() || isLocalUrl(sourceUrl, baseUrl, prefix)) continue;
+        futures.put(i, executor.submit(() -> fetch(sourceUrl, deadline)));
+      }
+
+      Map<Integer, Downloaded> result = new HashMap<>();
+      for (var entry : futures.entrySet()) {
+        String sourceUrl = urls.get(entry.getKey());
+        try {
+          long remaining = Math.max(0, deadline - System.nanoTime());
+          result.put(entry.getKey(), entry.getValue().get(remaining, TimeUnit.NANOSECONDS));
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          futures.values().forEach(f -> f.cancel(true));
+          log.error("🖼️ Failed to download image url={} productId={}", sourceUrl, productId, e);
+          throw new IllegalStateException("Failed to download image: " + sourceUrl, e);
+        } catch (ExecutionException | TimeoutException e) {
+          futures.values().forEach(f -> f.cancel(true));
+          Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+          log.error("🖼️ Failed to download image url={} productId={}", sourceUrl, productId, cause);
+          throw new IllegalStateException("Failed to download image: " + sourceUrl, cause);
+        }
+      }
+      log.debug("🖼️ Downloaded {} images productId={}", result.size(), productId);
+      return result;
+    }
+  }
+
+  private Downloaded fetch(String sourceUrl, long deadline) throws IOException, InterruptedException, TimeoutException {
+    URI uri = URI.create(sourceUrl);
+    String host = uri.getHost() == null ? "" : uri.getHost().toLowerCase(Locale.ROOT);
+    Semaphore permits = hostPermits.get(host,
+        h -> new Semaphore(Math.max(1, props.getMedia().getDownloadPerHostConcurrency())));
+    if (!permits.tryAcquire(remaining(deadline, sourceUrl).toNanos(), TimeUnit.NANOSECONDS)) {
+      throw new TimeoutException("Download deadline exceeded while waiting for " + host);
+    }
+    try {
+      HttpRequest request = HttpRequest.newBuilder(uri)
+          .timeout(remaining(deadline, sourceUrl))
+          .header("User-Agent", USER_AGENT)
+          .GET()
+          .build();
+      HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+      if (response.statusCode() < 200 || response.statusCode() >= 300) {
+        throw new IllegalStateException("Bad response: " + response.statusCode());
+      }
+      return new Downloaded(response.headers().firstValue("Content-Type").orElse(null), response.body());
+    } finally {
+      permits.release();
+    }
+  }
+
+  private static Duration remaining(long deadline, String sourceUrl) throws TimeoutException {
+    long nanos = deadline - System.nanoTime();
+    if (nanos <= 0) {
+      throw new TimeoutException("Download deadline exceeded: " + sourceUrl);
+    }
+    return Duration.ofNanos(nanos);
+  }
+
+  private void storeDerivatives(UUID productId, String filename, byte[] source) throws IOException {
+    String stem = filename.substring(0, filename.lastIndexOf('.'));
+    for (var derivative : imageResizer.resize(source)) {
+      String derivedName = stem + "_w" + derivative.width() + ImageResizer.EXTENSION;
+      MediaImage image = new MediaImage();
+      image.setProductId(UuidUtil.toBytes(productId));
+      image.setFilename(derivedName);
+      image.setOriginalFilename(filename);
+      image.setWidth(derivative.width());
+      image.setContentType(ImageResizer.CONTENT_TYPE);
+      image.setSizeBytes((long) derivative.data().length);
+      mediaStore.write(image, derivative.data());
+      mediaImageRepository.save(image);
+      mediaCache.invalidate(derivedName);
+      log.debug("🖼️ Stored derivative filename={} size={}B (source {}B)",
+          derivedName, derivative.data().length, source.length);
+    }
+  }
+
   public void deleteImages(UUID productId) {
-    mediaImageRepository.deleteByProductId(UuidUtil.toBytes(productId));
+    byte[] id = UuidUtil.toBytes(productId);
+    release(id, productMediaRepository.findFilenamesByProductId(id));
+  }
+
+  /**
+   * Снимает ссылки товара и удаляет файлы (вместе с уменьшенными копиями), на которые больше никто не ссылается.
+   * Проверка ссылок и удаление строк — один DELETE, поэтому параллельный addRef либо успевает и сохраняет
+   * файл, либо видит, что файла уже нет.
+   */
+  private void release(byte[] productId, List<String> filenames) {
+    if (filenames.isEmpty()) return;
+    productMediaRepository.removeRefs(productId, filenames);
+    for (String filename : filenames) {
+      var orphans = mediaImageRepository.findWithDerivatives(filename);
+      if (orphans.isEmpty()) continue;
+      if (mediaImageRepository.deleteIfUnreferenced(filename) == 0) continue;
+      orphans.forEach(mediaStore::delete);
+      mediaCache.invalidateAll(orphans);
+      log.debug("🖼️ Deleted unreferenced media filename={} files={}", filename, orphans.size());
+    }
   }
 
+  private static String sha256Hex(byte[] data) {
+    try {
+      return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 not available", e);
+    }
+  }
+
+  private static String localFilename(String url) {
+    String path = url.trim();
+    int query = path.indexOf('?');
+    if (query >= 0) path = path.substring(0, query);
+    return path.substring(path.lastIndexOf('/') + 1);
+  }
+
+  private record Downloaded(String contentType, byte[] body) {}
+
   private String buildPublicUrl(String baseUrl, String prefix, String filename) {
     String normalizedPrefix = normalizePrefix(prefix);
     String path = normalizedPrefix + "/" + filename;
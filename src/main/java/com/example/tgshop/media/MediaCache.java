@@ -0,0 +1,69 @@
+package com.example.tgshop.media;
+
+import com.example.tgshop.config.AppProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.time.Instant;
+import java.util.Collection;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+/**
+ * Кэш горячих картинок с бюджетом в байтах (W-TinyLFU из Caffeine).
+ * Метрики: cache.gets{cache=media.images,result=hit|miss}, cache.evictions, media.cache.bytes.
+ */
+@Component
+@Slf4j
+public class MediaCache {
+
+  /** Накладные расходы на запись сверх самих байтов: ключ, объект, ссылки. */
+  private static final int ENTRY_OVERHEAD = 96;
+
+  private final long maxEntryBytes;
+  private final Cache<String, CachedMedia> cache;
+
+  public MediaCache(AppProperties props, MeterRegistry meterRegistry) {
+    var media = props.getMedia();
+    this.maxEntryBytes = media.getCacheMaxEntryBytes();
+    this.cache = Caffeine.newBuilder()
+        .maximumWeight(Math.max(0, media.getCacheMaxBytes()))
+        .weigher((String key, CachedMedia value) -> value.data().length + key.length() * 2 + ENTRY_OVERHEAD)
+        .recordStats()
+        .build();
+    CaffeineCacheMetrics.monitor(meterRegistry, cache, "media.images");
+    Gauge.builder("media.cache.bytes", cache, c -> c.policy().eviction()
+            .map(eviction -> eviction.weightedSize().orElse(0L))
+            .orElse(0L))
+        .description("Weighted size of cached media payloads")
+        .baseUnit("bytes")
+        .register(meterRegistry);
+    log.info("🖼️ Media cache budget={}B maxEntry={}B", media.getCacheMaxBytes(), maxEntryBytes);
+  }
+
+  public CachedMedia get(String filename) {
+    return cache.getIfPresent(filename);
+  }
+
+  public boolean fits(long sizeBytes) {
+    return sizeBytes >= 0 && sizeBytes <= maxEntryBytes;
+  }
+
+  public void put(String filename, CachedMedia media) {
+    if (fits(media.data().length)) {
+      cache.put(filename, media);
+    }
+  }
+
+  public void invalidate(String filename) {
+    cache.invalidate(filename);
+  }
+
+  public void invalidateAll(Collection<String> filenames) {
+    cache.invalidateAll(filenames);
+  }
+
+  public record CachedMedia(String contentType, Instant lastModified, byte[] data) {}
+}
@@ -1,27 +1,108 @@
 package com.example.tgshop.media;
 
+import com.example.tgshop.config.AppProperties;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.regex.Pattern;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+/**
+ * Отдаёт изображение как {@link Resource}: Spring MVC сам обрабатывает Range (206)
+ * и If-Modified-Since (304), а байты копируются потоком, не поднимаясь целиком в heap.
+ * Небольшие картинки дополнительно держатся в {@link MediaCache}.
+ * С параметром {@code ?w=} отдаётся ближайшая не меньшая уменьшенная копия, а если её нет — оригинал.
+ */
 @RestController
 @RequiredArgsConstructor
+@Slf4j
 @RequestMapping("${app.media.url-prefix:/media}")
 public class MediaController {
 
+  private static final CacheControl CACHE_CONTROL = CacheControl.maxAge(Duration.ofDays(1)).cachePublic();
+  /** Имя = sha256 содержимого: по такому URL байты никогда не меняются. */
+  private static final CacheControl IMMUTABLE = CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable();
+  private static final Pattern CONTENT_ADDRESSED = Pattern.compile("[0-9a-f]{64}(_w\\d+)?\\.[a-z]+");
+
   private final MediaImageRepository mediaImageRepository;
+  private final MediaStore mediaStore;
+  private final MediaCache mediaCache;
+  private final AppProperties props;
 
   @GetMapping("/{filename}")
-  public ResponseEntity<byte[]> getMedia(@PathVariable("filename") String filename) {
-    return mediaImageRepository.findByFilename(filename)
-        .map(image -> ResponseEntity.ok()
-            .contentType(MediaType.parseMediaType(image.getContentType()))
-            .body(image.getData()))
-        .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND).build());
+  public ResponseEntity<Resource> getMedia(
+      @PathVariable("filename") String filename,
+      @RequestParam(value = "w", required = false) Integer width
+  ) {
+    if (width != null && width > 0) {
+      filename = resolveDerivative(filename, width);
+    }
+    var cached = mediaCache.get(filename);
+    if (cached != null) {
+      return respond(filename, cached.contentType(), cached.lastModified(), new ByteArrayResource(cached.data()));
+    }
+
+    var meta = mediaImageRepository.findMetaByFilename(filename).orElse(null);
+    if (meta == null) {
+      return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+    }
+    Resource resource = mediaStore.read(filename).orElse(null);
+    if (resource == null) {
+      return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+    }
+    if (meta.getSizeBytes() != null && mediaCache.fits(meta.getSizeBytes())) {
+      try {
+        byte[] data = resource.getContentAsByteArray();
+        mediaCache.put(filename, new MediaCache.CachedMedia(meta.getContentType(), meta.getCreatedAt(), data));
+        resource = new ByteArrayResource(data);
+      } catch (IOException e) {
+        log.warn("🖼️ Failed to read media for cache filename={}", filename, e);
+      }
+    }
+    return respond(filename, meta.getContentType(), meta.getCreatedAt(), resource);
+  }
+
+  private String resolveDerivative(String filename, int width) {
+    // ожидаемое имя копии проверяем по кэшу, чтобы горячие превью не ходили в БД за поиском
+    String expected = expectedDerivative(filename, width);
+    if (expected != null && mediaCache.get(expected) != null) {
+      return expected;
+    }
+    return mediaImageRepository.findDerivativeFilenames(filename, width, PageRequest.of(0, 1)).stream()
+        .findFirst()
+        .orElse(filename);
+  }
+
+  private String expectedDerivative(String filename, int width) {
+    int dot = filename.lastIndexOf('.');
+    if (dot <= 0) return null;
+    return props.getMedia().getDerivativeWidths().stream()
+        .filter(w -> w >= width)
+        .min(Integer::compare)
+        .map(w -> filename.substring(0, dot) + "_w" + w + ImageResizer.EXTENSION)
+        .orElse(null);
+  }
+
+  private static ResponseEntity<Resource> respond(
+      String filename, String contentType, Instant lastModified, Resource body) {
+    boolean immutable = CONTENT_ADDRESSED.matcher(filename).matches();
+    return ResponseEntity.ok()
+        .contentType(MediaType.parseMediaType(contentType))
+        .cacheControl(immutable ? IMMUTABLE : CACHE_CONTROL)
+        .lastModified(lastModified)
+        .body(body);
   }
 }
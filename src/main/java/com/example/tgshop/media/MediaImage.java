@@ -1,6 +1,7 @@
 package com.example.tgshop.media;
 
 import jakarta.persistence.*;
+import java.time.Instant;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
@@ -16,6 +17,7 @@ public class MediaImage {
   @GeneratedValue(strategy = GenerationType.IDENTITY)
   private Long id;
 
+  /** Товар, для которого файл был скачан впервые; кто ссылается на него сейчас — см. {@link ProductMedia}. */
   @Column(name = "product_id", nullable = false, columnDefinition = "BINARY(16)")
   private byte[] productId;
 
@@ -25,7 +27,25 @@ public class MediaImage {
   @Column(name = "content_type", nullable = false, length = 128)
   private String contentType;
 
+  /** Байты изображения; null, если они лежат во внешнем {@link MediaStore}. */
   @Lob
-  @Column(nullable = false, columnDefinition = "LONGBLOB")
+  @Column(columnDefinition = "LONGBLOB")
   private byte[] data;
+
+  /** Для уменьшенной копии — имя исходника и ширина; у оригиналов оба поля null. */
+  @Column(name = "original_filename", length = 255)
+  private String originalFilename;
+
+  private Integer width;
+
+  @Column(name = "size_bytes")
+  private Long sizeBytes;
+
+  @Column(name = "created_at", nullable = false)
+  private Instant createdAt;
+
+  @PrePersist
+  void prePersist() {
+    if (createdAt == null) createdAt = Instant.now();
+  }
 }
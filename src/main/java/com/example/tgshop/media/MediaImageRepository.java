@@ -1,6 +1,9 @@
 package com.example.tgshop.media;
 
+import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
@@ -13,8 +16,46 @@ public interface MediaImageRepository extends JpaRepository<MediaImage, Long> {
 
   Optional<MediaImage> findByFilename(String filename);
 
+  boolean existsByFilename(String filename);
+
+  /** Метаданные без LONGBLOB-колонки. */
+  @Query("select m.id as id, m.filename as filename, m.contentType as contentType, "
+      + "m.sizeBytes as sizeBytes, m.createdAt as createdAt from MediaImage m where m.filename = :filename")
+  Optional<MediaMeta> findMetaByFilename(@Param("filename") String filename);
+
+  @Query("select m.data from MediaImage m where m.filename = :filename")
+  Optional<byte[]> findDataByFilename(@Param("filename") String filename);
+
+  /** Сам файл и все его уменьшенные копии. */
+  @Query("select m.filename from MediaImage m where m.filename = :filename or m.originalFilename = :filename")
+  List<String> findWithDerivatives(@Param("filename") String filename);
+
+  /** Уменьшенные копии не уже запрошенной ширины, от меньшей к большей. */
+  @Query("select m.filename from MediaImage m where m.originalFilename = :original and m.width >= :width "
+      + "order by m.width")
+  List<String> findDerivativeFilenames(@Param("original") String original, @Param("width") int width,
+      Pageable pageable);
+
+  @Query("select m.id from MediaImage m where m.data is not null order by m.id")
+  List<Long> findIdsWithInlineData(Pageable pageable);
+
+  /** Файл и его уменьшенные копии — только если на файл не осталось ссылок товаров. */
   @Modifying
   @Transactional
-  @Query("delete from MediaImage mi where mi.productId = :productId")
-  void deleteByProductId(@Param("productId") byte[] productId);
+  @Query(value = "DELETE FROM media_images WHERE (filename = :filename OR original_filename = :filename) "
+      + "AND NOT EXISTS (SELECT 1 FROM product_media pm WHERE pm.filename = :filename)",
+      nativeQuery = true)
+  int deleteIfUnreferenced(@Param("filename") String filename);
+
+  interface MediaMeta {
+    Long getId();
+
+    String getFilename();
+
+    String getContentType();
+
+    Long getSizeBytes();
+
+    Instant getCreatedAt();
+  }
 }
@@ -0,0 +1,64 @@
+package com.example.tgshop.media;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Разовый перенос байтов из media_images.data во внешнее хранилище.
+ * Включается app.media.migrate-to-fs=true вместе с app.media.storage=fs; каждая запись
+ * переносится в своей транзакции, поэтому прерванный перенос можно просто перезапустить.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+@ConditionalOnProperty(prefix = "app.media", name = "migrate-to-fs", havingValue = "true")
+public class MediaStorageMigrator implements ApplicationRunner {
+
+  private static final int BATCH_SIZE = 50;
+
+  private final MediaImageRepository mediaImageRepository;
+  private final MediaStore mediaStore;
+  private final TransactionTemplate transactionTemplate;
+
+  @Override
+  public void run(ApplicationArguments args) {
+    if (mediaStore instanceof DatabaseMediaStore) {
+      log.warn("🖼️ Media migration skipped: app.media.storage is db");
+      return;
+    }
+    log.info("🖼️ Moving inline media bytes out of the database");
+    int moved = 0;
+    while (true) {
+      var ids = mediaImageRepository.findIdsWithInlineData(PageRequest.of(0, BATCH_SIZE));
+      if (ids.isEmpty()) break;
+      for (Long id : ids) {
+        transactionTemplate.executeWithoutResult(status -> moveToStore(id));
+        moved++;
+      }
+      log.info("🖼️ Moved {} media images so far", moved);
+    }
+    log.info("🖼️ Media migration finished, moved={}", moved);
+  }
+
+  private void moveToStore(Long id) {
+    mediaImageRepository.findById(id).ifPresent(image -> {
+      byte[] data = image.getData();
+      if (data == null) return;
+      try {
+        mediaStore.write(image, data);
+      } catch (IOException e) {
+        throw new UncheckedIOException("Failed to move media " + image.getFilename(), e);
+      }
+      image.setSizeBytes((long) data.length);
+      mediaImageRepository.save(image);
+    });
+  }
+}
@@ -0,0 +1,19 @@
+package com.example.tgshop.media;
+
+import java.io.IOException;
+import java.util.Optional;
+import org.springframework.core.io.Resource;
+
+/**
+ * Хранилище байтов изображений. Метаданные всегда лежат в media_images,
+ * а сами байты — либо в той же записи, либо во внешнем хранилище.
+ */
+public interface MediaStore {
+
+  /** Сохраняет байты изображения до того, как запись {@code image} будет сохранена в БД. */
+  void write(MediaImage image, byte[] data) throws IOException;
+
+  Optional<Resource> read(String filename);
+
+  void delete(String filename);
+}
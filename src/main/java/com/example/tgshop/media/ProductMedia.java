@@ -0,0 +1,25 @@
+package com.example.tgshop.media;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/** Ссылка товара на сохранённый файл; файл удаляется, когда на него не остаётся ссылок. */
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+@Table(name = "product_media")
+public class ProductMedia {
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private Long id;
+
+  @Column(name = "product_id", nullable = false, columnDefinition = "BINARY(16)")
+  private byte[] productId;
+
+  @Column(nullable = false, length = 255)
+  private String filename;
+}
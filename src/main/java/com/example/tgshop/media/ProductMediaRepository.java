@@ -0,0 +1,33 @@
+package com.example.tgshop.media;
+
+import java.util.Collection;
+import java.util.List;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+public interface ProductMediaRepository extends JpaRepository<ProductMedia, Long> {
+
+  @Query("select pm.filename from ProductMedia pm where pm.productId = :productId")
+  List<String> findFilenamesByProductId(@Param("productId") byte[] productId);
+
+  boolean existsByProductIdAndFilename(byte[] productId, String filename);
+
+  /** Ставит ссылку, только если файл ещё сохранён; 0 — ссылка уже была или файла нет. */
+  @Modifying
+  @Transactional
+  @Query(value = "INSERT IGNORE INTO product_media (product_id, filename) "
+      + "SELECT :productId, :filename FROM DUAL "
+      + "WHERE EXISTS (SELECT 1 FROM media_images m WHERE m.filename = :filename)",
+      nativeQuery = true)
+  int addRef(@Param("productId") byte[] productId, @Param("filename") String filename);
+
+  @Modifying
+  @Transactional
+  @Query("delete from ProductMedia pm where pm.productId = :productId and pm.filename in :filenames")
+  int removeRefs(@Param("productId") byte[] productId, @Param("filenames") Collection<String> filenames);
+}
@@ -0,0 +1,78 @@
+package com.example.tgshop.order;
+
+import com.example.tgshop.common.UuidUtil;
+import jakarta.persistence.*;
+import java.time.Instant;
+import java.util.UUID;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Запись outbox: уведомление по заказу, которое пишется в той же транзакции, что и сам заказ,
+ * а в Telegram уходит позже через {@link OrderNotificationDispatcher}.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+@Table(name = "notification_outbox")
+public class OrderNotification {
+
+  public static final String PENDING = "PENDING";
+  public static final String SENDING = "SENDING";
+  public static final String SENT = "SENT";
+  public static final String FAILED = "FAILED";
+
+  public enum Kind { ORDER_PLACED, NEW_ORDER_ADMIN, ORDER_APPROVED, ORDER_REJECTED, ORDER_SHIPPED }
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private Long id;
+
+  @Column(name = "order_id", nullable = false, columnDefinition = "BINARY(16)")
+  private byte[] orderId;
+
+  @Enumerated(EnumType.STRING)
+  @Column(nullable = false, length = 32)
+  private Kind kind;
+
+  /** Причина отклонения для ORDER_REJECTED. */
+  @Column(length = 1000)
+  private String reason;
+
+  @Column(nullable = false, length = 16)
+  private String status = PENDING;
+
+  @Column(nullable = false)
+  private int attempts;
+
+  @Column(name = "next_attempt_at", nullable = false)
+  private Instant nextAttemptAt;
+
+  @Column(name = "last_error", length = 1000)
+  private String lastError;
+
+  @Column(name = "created_at", nullable = false)
+  private Instant createdAt;
+
+  @Column(name = "updated_at", nullable = false)
+  private Instant updatedAt;
+
+  @PrePersist
+  void prePersist() {
+    Instant now = Instant.now();
+    if (createdAt == null) createdAt = now;
+    if (nextAttemptAt == null) nextAttemptAt = now;
+    updatedAt = now;
+  }
+
+  @PreUpdate
+  void preUpdate() {
+    updatedAt = Instant.now();
+  }
+
+  public UUID orderUuid() {
+    return UuidUtil.fromBytes(orderId);
+  }
+}
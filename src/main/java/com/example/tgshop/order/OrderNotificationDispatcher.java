@@ -0,0 +1,148 @@
+package com.example.tgshop.order;
+
+import com.example.tgshop.common.UuidUtil;
+import com.example.tgshop.config.AppProperties;
+import com.example.tgshop.tg.TelegramNotifyService;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Разбирает notification_outbox: отправляет уведомления по заказам в Telegram вне транзакции оформления
+ * и повторяет неудачные отправки с экспоненциальной задержкой.
+ *
+ * Запись забирается условным UPDATE в статус SENDING с арендой — при нескольких инстансах уведомление
+ * уходит один раз; если инстанс упал посреди отправки, запись снова станет due по истечении аренды.
+ *
+ * Отправки идут параллельно на виртуальных потоках (до outbox-concurrency): пока одно уведомление ждёт
+ * лимита своего чата в очереди отправки, остальные расходуют общий бюджет бота. Уведомления одного
+ * заказа уходят по порядку — следующее не выдаётся, пока предыдущее не завершено.
+ *
+ * Отправленные записи хранятся outbox-sent-retention и затем удаляются пачками, чтобы таблица не росла.
+ */
+@Component
+@Slf4j
+public class OrderNotificationDispatcher {
+
+  private static final Duration CLAIM_LEASE = Duration.ofMinutes(10);
+  private static final int PURGE_BATCH = 5000;
+
+  private final OrderNotificationRepository notificationRepository;
+  private final OrderRepository orderRepository;
+  private final TelegramNotifyService notifyService;
+  private final AppProperties props;
+
+  private final int concurrency;
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+  public OrderNotificationDispatcher(
+      OrderNotificationRepository notificationRepository,
+      OrderRepository orderRepository,
+      TelegramNotifyService notifyService,
+      AppProperties props
+  ) {
+    this.notificationRepository = notificationRepository;
+    this.orderRepository = orderRepository;
+    this.notifyService = notifyService;
+    this.props = props;
+    this.concurrency = Math.max(1, props.getTelegram().getOutboxConcurrency());
+  }
+
+  @TransactionalEventListener
+  public void onQueued(OrderNotificationsQueued event) {
+    CompletableFuture.runAsync(this::dispatch);
+  }
+
+  @Scheduled(fixedDelayString = "${app.telegram.outbox-poll-interval-ms:5000}")
+  public synchronized void dispatch() {
+    int free = concurrency - inFlight.get();
+    if (free <= 0) return;
+    Instant now = Instant.now();
+    for (Long id : notificationRepository.findDueIds(now, PageRequest.of(0, free))) {
+      if (notificationRepository.claim(id, now, now.plus(CLAIM_LEASE)) == 0) continue;
+      inFlight.incrementAndGet();
+      executor.execute(() -> {
+        try {
+          notificationRepository.findById(id).ifPresent(this::deliver);
+        } catch (Exception e) {
+          log.error("🤖 TG Failed to deliver notification id={}", id, e);
+        } finally {
+          inFlight.decrementAndGet();
+        }
+        // следующее уведомление того же заказа стало due — не ждём планировщика
+        CompletableFuture.runAsync(this::dispatch);
+      });
+    }
+  }
+
+  @Scheduled(fixedDelayString = "${app.telegram.outbox-purge-interval-ms:3600000}")
+  public void purgeSent() {
+    Instant before = Instant.now().minus(props.getTelegram().getOutboxSentRetention());
+    int deleted;
+    int total = 0;
+    do {
+      deleted = notificationRepository.deleteSent(before, PURGE_BATCH);
+      total += deleted;
+    } while (deleted == PURGE_BATCH);
+    if (total > 0) {
+      log.info("🤖 TG Purged {} sent notifications older than {}", total, before);
+    }
+  }
+
+  private void deliver(OrderNotification notification) {
+    var order = orderRepository.findByIdWithItems(notification.getOrderId()).orElse(null);
+    if (order == null) {
+      log.warn("🤖 TG Dropping notification id={} kind={}: order {} not found",
+          notification.getId(), notification.getKind(), notification.orderUuid());
+      notification.setStatus(OrderNotification.FAILED);
+      notification.setLastError("Order not found");
+      notificationRepository.save(notification);
+      return;
+    }
+
+    try {
+      switch (notification.getKind()) {
+        case ORDER_PLACED -> notifyService.notifyUserOrderPlaced(order);
+        case NEW_ORDER_ADMIN -> notifyService.notifyNewOrder(order);
+        case ORDER_APPROVED -> notifyService.notifyUserOrderStatus(order, TelegramNotifyService.OrderDecision.APPROVED);
+        case ORDER_REJECTED -> notifyService.notifyUserOrderRejected(order, notification.getReason());
+        case ORDER_SHIPPED -> notifyService.notifyUserOrderShipped(order);
+      }
+      notification.setStatus(OrderNotification.SENT);
+      notification.setLastError(null);
+      log.debug("🤖 TG Notification delivered id={} kind={} order={}",
+          notification.getId(), notification.getKind(), UuidUtil.fromBytes(notification.getOrderId()));
+    } catch (Exception e) {
+      String message = String.valueOf(e.getMessage());
+      notification.setLastError(message.length() > 1000 ? message.substring(0, 1000) : message);
+      if (notification.getAttempts() >= props.getTelegram().getOutboxMaxAttempts()) {
+        notification.setStatus(OrderNotification.FAILED);
+        log.error("🤖 TG Notification id={} kind={} gave up after {} attempts",
+            notification.getId(), notification.getKind(), notification.getAttempts(), e);
+      } else {
+        Duration delay = props.getTelegram().getOutboxBackoff()
+            .multipliedBy(1L << Math.min(notification.getAttempts() - 1, 10));
+        notification.setStatus(OrderNotification.PENDING);
+        notification.setNextAttemptAt(Instant.now().plus(delay));
+        log.warn("🤖 TG Notification id={} kind={} attempt={} failed, retry in {}",
+            notification.getId(), notification.getKind(), notification.getAttempts(), delay, e);
+      }
+    }
+    notificationRepository.save(notification);
+  }
+
+  @PreDestroy
+  void shutdown() {
+    executor.shutdownNow();
+  }
+}
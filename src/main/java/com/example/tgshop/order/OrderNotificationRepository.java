@@ -0,0 +1,40 @@
+package com.example.tgshop.order;
+
+import java.time.Instant;
+import java.util.List;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+public interface OrderNotificationRepository extends JpaRepository<OrderNotification, Long> {
+
+  /**
+   * Ожидающие отправки и взятые в работу, чья аренда истекла (инстанс упал посреди отправки).
+   * По каждому заказу — только самое раннее незавершённое уведомление, чтобы «отправлен» не обогнал «подтверждён».
+   */
+  @Query("select n.id from OrderNotification n where n.status in ('PENDING', 'SENDING') "
+      + "and n.nextAttemptAt <= :now and not exists (select 1 from OrderNotification e "
+      + "where e.orderId = n.orderId and e.id < n.id and e.status in ('PENDING', 'SENDING')) "
+      + "order by n.id")
+  List<Long> findDueIds(@Param("now") Instant now, Pageable pageable);
+
+  /**
+   * Забирает запись в работу до {@code leaseUntil}; 0 — её уже взял другой инстанс или поток.
+   * Пока аренда не истекла, запись никому больше не выдаётся.
+   */
+  @Modifying
+  @Transactional
+  @Query("update OrderNotification n set n.status = 'SENDING', n.attempts = n.attempts + 1, "
+      + "n.nextAttemptAt = :leaseUntil, n.updatedAt = :now "
+      + "where n.id = :id and n.status in ('PENDING', 'SENDING') and n.nextAttemptAt <= :now")
+  int claim(@Param("id") Long id, @Param("now") Instant now, @Param("leaseUntil") Instant leaseUntil);
+
+  @Modifying
+  @Transactional
+  @Query(value = "DELETE FROM notification_outbox WHERE status = 'SENT' AND updated_at < :before LIMIT :limit",
+      nativeQuery = true)
+  int deleteSent(@Param("before") Instant before, @Param("limit") int limit);
+}
@@ -0,0 +1,4 @@
+package com.example.tgshop.order;
+
+/** В outbox появились новые уведомления; диспетчер забирает их сразу после коммита. */
+public record OrderNotificationsQueued() {}
@@ -1,14 +1,75 @@
 package com.example.tgshop.order;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 public interface OrderRepository extends JpaRepository<OrderEntity, byte[]> {
 
-  @Query("select distinct o from OrderEntity o left join fetch o.items order by o.createdAt desc")
-  List<OrderEntity> findAllWithItems();
+  /**
+   * Страница id заказов по ключу (created_at, id) от новых к старым; фильтры с null не применяются.
+   * Покрывается индексами ix_orders_created / ix_orders_status_created / ix_orders_user_created.
+   */
+  @Query(value = "SELECT o.id FROM orders o "
+      + "WHERE (:status IS NULL OR o.status = :status) "
+      + "AND (:tgUserId IS NULL OR o.tg_user_id = :tgUserId) "
+      + "AND (:createdFrom IS NULL OR o.created_at >= :createdFrom) "
+      + "AND (:createdTo IS NULL OR o.created_at < :createdTo) "
+      + "AND (:afterCreatedAt IS NULL OR o.created_at < :afterCreatedAt "
+      + "     OR (o.created_at = :afterCreatedAt AND o.id < :afterId)) "
+      + "ORDER BY o.created_at DESC, o.id DESC "
+      + "LIMIT :limit",
+      nativeQuery = true)
+  List<byte[]> findPageIds(
+      @Param("status") String status,
+      @Param("tgUserId") Long tgUserId,
+      @Param("createdFrom") Instant createdFrom,
+      @Param("createdTo") Instant createdTo,
+      @Param("afterCreatedAt") Instant afterCreatedAt,
+      @Param("afterId") byte[] afterId,
+      @Param("limit") int limit
+  );
+
+  @Query("select distinct o from OrderEntity o left join fetch o.items where o.id in :ids")
+  List<OrderEntity> findAllWithItemsByIdIn(@Param("ids") Collection<byte[]> ids);
+
+  /** Сводка по тем же фильтрам: число заказов и выручка по подтверждённым/отправленным. */
+  @Query(value = "SELECT COUNT(*) AS orderCount, "
+      + "COALESCE(SUM(CASE WHEN o.status IN ('APPROVED', 'SHIPPED') THEN o.total_minor END), 0) AS revenueMinor "
+      + "FROM orders o "
+      + "WHERE (:status IS NULL OR o.status = :status) "
+      + "AND (:tgUserId IS NULL OR o.tg_user_id = :tgUserId) "
+      + "AND (:createdFrom IS NULL OR o.created_at >= :createdFrom) "
+      + "AND (:createdTo IS NULL OR o.created_at < :createdTo)",
+      nativeQuery = true)
+  OrderTotals summarize(
+      @Param("status") String status,
+      @Param("tgUserId") Long tgUserId,
+      @Param("createdFrom") Instant createdFrom,
+      @Param("createdTo") Instant createdTo
+  );
+
+  interface OrderTotals {
+    long getOrderCount();
+    long getRevenueMinor();
+  }
+
+  @Query("select o from OrderEntity o left join fetch o.items where o.id = :id")
+  Optional<OrderEntity> findByIdWithItems(@Param("id") byte[] id);
 
   Optional<OrderEntity> findByAdminChatIdAndAdminThreadId(Long adminChatId, Integer adminThreadId);
+
+  /** Точечно, чтобы не перезаписать статус, который админ мог поменять параллельно. */
+  @Modifying
+  @Transactional
+  @Query("update OrderEntity o set o.adminChatId = :chatId, o.adminThreadId = :threadId, "
+      + "o.adminThreadMessageId = :messageId where o.id = :id")
+  int updateAdminThread(@Param("id") byte[] id, @Param("chatId") Long chatId, @Param("threadId") Integer threadId,
+      @Param("messageId") Integer messageId);
 }
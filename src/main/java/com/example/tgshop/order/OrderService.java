@@ -1,63 +1,92 @@
 package com.example.tgshop.order;
 
+import com.example.tgshop.catalog.CatalogChangedEvent;
 import com.example.tgshop.common.UuidUtil;
 import com.example.tgshop.promo.PromoCode;
 import com.example.tgshop.promo.PromoCodeRepository;
 import com.example.tgshop.product.Product;
 import com.example.tgshop.product.ProductVariant;
 import com.example.tgshop.product.ProductRepository;
-import com.example.tgshop.tg.TelegramNotifyService;
+import com.example.tgshop.product.ProductVariantRepository;
 import jakarta.transaction.Transactional;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.UUID;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 @Service
 @Slf4j
 public class OrderService {
 
+    public static final int MAX_PAGE_SIZE = 200;
+
     private final ProductRepository productRepository;
+    private final ProductVariantRepository productVariantRepository;
     private final OrderRepository orderRepository;
     private final PromoCodeRepository promoCodeRepository;
-    private final TelegramNotifyService notifyService;
+    private final ProductSalesRepository productSalesRepository;
+    private final OrderNotificationRepository notificationRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
     public OrderService(
             ProductRepository productRepository,
+            ProductVariantRepository productVariantRepository,
             OrderRepository orderRepository,
             PromoCodeRepository promoCodeRepository,
-            TelegramNotifyService notifyService
+            ProductSalesRepository productSalesRepository,
+            OrderNotificationRepository notificationRepository,
+            ApplicationEventPublisher eventPublisher
     ) {
         this.productRepository = productRepository;
+        this.productVariantRepository = productVariantRepository;
         this.orderRepository = orderRepository;
         this.promoCodeRepository = promoCodeRepository;
-        this.notifyService = notifyService;
+        this.productSalesRepository = productSalesRepository;
+        this.notificationRepository = notificationRepository;
+        this.eventPublisher = eventPublisher;
     }
 
     @Transactional
     public OrderEntity createOrder(CreateOrderCommand cmd) {
         log.info("🧾 ORDER Creating order for tgUserId={} items={}", cmd.tgUserId(), cmd.items().size());
-        Map<UUID, Product> products = new HashMap<>();
         Map<UUID, Integer> productTotals = new HashMap<>();
         Map<UUID, Integer> variantTotals = new HashMap<>();
+        Map<UUID, UUID> variantProducts = new HashMap<>();
+
+        // все товары корзины вместе с вариантами — одним запросом
+        Map<UUID, Product> products = loadProducts(cmd.items());
+        Map<UUID, ProductVariant> variantsById = new HashMap<>();
+        products.values().forEach(p -> p.getVariants().forEach(v -> variantsById.put(v.uuid(), v)));
+        List<ProductVariant> itemVariants = new ArrayList<>(cmd.items().size());
 
         for (var item : cmd.items()) {
             var pid = item.productId();
-            var p = productRepository.findById(UuidUtil.toBytes(pid))
-                    .orElseThrow(() -> {
-                        log.warn("🧾 ORDER Order rejected: product not found {}", pid);
-                        return new IllegalArgumentException("Product not found: " + pid);
-                    });
+            var p = products.get(pid);
+            if (p == null) {
+                log.warn("🧾 ORDER Order rejected: product not found {}", pid);
+                throw new IllegalArgumentException("Product not found: " + pid);
+            }
             if (!p.isActive()) {
                 log.warn("🧾 ORDER Order rejected: product inactive {}", pid);
                 throw new IllegalArgumentException("Product inactive: " + pid);
             }
-            ProductVariant variant = resolveVariant(p, item.variantId());
+            ProductVariant variant = resolveVariant(p, item.variantId(), variantsById);
+            itemVariants.add(variant);
             if (variant != null) {
                 UUID vid = variant.uuid();
+                variantProducts.put(vid, pid);
                 int nextVariantTotal = variantTotals.merge(vid, item.quantity(), Integer::sum);
                 if (variant.getStock() < nextVariantTotal) {
                     log.warn("🧾 ORDER Order rejected: not enough stock product={} variant={} requestedTotal={} available={}",
@@ -72,7 +101,6 @@ public class OrderService {
                     throw new IllegalArgumentException("Not enough stock: " + p.getTitle());
                 }
             }
-            products.put(pid, p);
         }
 
         PromoCode promo = resolvePromo(cmd.promoCode());
@@ -90,9 +118,10 @@ public class OrderService {
         }
 
         long total = 0;
-        for (var item : cmd.items()) {
+        for (int i = 0; i < cmd.items().size(); i++) {
+            var item = cmd.items().get(i);
             var p = products.get(item.productId());
-            var variant = resolveVariant(p, item.variantId());
+            var variant = itemVariants.get(i);
 
             var oi = new OrderItem();
             oi.setOrder(order);
@@ -107,16 +136,12 @@ public class OrderService {
             order.getItems().add(oi);
 
             total += p.getPriceMinor() * (long) item.quantity();
-            if (variant != null) {
-                variant.setStock(variant.getStock() - item.quantity());
-                int totalStock = p.getVariants().stream().mapToInt(ProductVariant::getStock).sum();
-                p.setStock(totalStock);
-            } else {
-                p.setStock(p.getStock() - item.quantity());
-            }
         }
         order.setSubtotalMinor(total);
 
+        // проверка выше — по прочитанным значениям; списание — условными UPDATE, они и решают
+        reserveStock(products, productTotals, variantTotals, variantProducts);
+
         long discount = 0;
         if (promo != null) {
             if (promo.getDiscountAmountMinor() > 0) {
@@ -131,15 +156,15 @@ public class OrderService {
         order.setTotalMinor(Math.max(0, total - discount));
 
         var saved = orderRepository.save(order);
+        applySoldCounts(saved, 1);
         log.info("🧾 ORDER Order persisted uuid={} totalMinor={}", saved.uuid(), saved.getTotalMinor());
+        eventPublisher.publishEvent(new CatalogChangedEvent("order created"));
 
-        // 1) юзеру — сразу "заказ принят"
-        notifyService.notifyUserOrderPlaced(saved);
-
-        // 2) админу — уведомление с кнопками
-        notifyService.notifyNewOrder(saved);
+        // 1) юзеру — "заказ принят", 2) админу — уведомление с кнопками; уйдут после коммита
+        enqueueNotification(saved, OrderNotification.Kind.ORDER_PLACED, null);
+        enqueueNotification(saved, OrderNotification.Kind.NEW_ORDER_ADMIN, null);
 
-        log.info("🧾 ORDER Order notifications dispatched uuid={}", saved.uuid());
+        log.info("🧾 ORDER Order notifications queued uuid={}", saved.uuid());
         return saved;
     }
 
@@ -156,7 +181,7 @@ public class OrderService {
 
         var saved = orderRepository.save(o);
 
-        notifyService.notifyUserOrderStatus(saved, TelegramNotifyService.OrderDecision.APPROVED);
+        enqueueNotification(saved, OrderNotification.Kind.ORDER_APPROVED, null);
         log.info("🧾 ORDER Order approved uuid={}", saved.uuid());
         return saved;
     }
@@ -175,34 +200,17 @@ public class OrderService {
                     return new IllegalArgumentException("Order not found: " + uuid);
                 });
 
+        boolean alreadyRejected = "REJECTED".equals(o.getStatus());
         o.setStatus("REJECTED");
-
-        // вернуть сток обратно
-        o.getItems().forEach(i -> {
-            byte[] pid = i.getProductId();
-            productRepository.findById(pid).ifPresent(p -> {
-                if (i.getVariantId() != null) {
-                    var variant = p.getVariants().stream()
-                        .filter(v -> java.util.Arrays.equals(v.getId(), i.getVariantId()))
-                        .findFirst()
-                        .orElse(null);
-                    if (variant != null) {
-                        variant.setStock(variant.getStock() + i.getQuantity());
-                        int totalStock = p.getVariants().stream().mapToInt(ProductVariant::getStock).sum();
-                        p.setStock(totalStock);
-                        log.debug("🧾 ORDER Restored variant stock product={} variant={} newStock={}",
-                            p.getTitle(), variant.getName(), variant.getStock());
-                        return;
-                    }
-                }
-                p.setStock(p.getStock() + i.getQuantity());
-                log.debug("🧾 ORDER Restored stock product={} newStock={}", p.getTitle(), p.getStock());
-            });
-        });
+        if (!alreadyRejected) {
+            // вернуть сток обратно (повторный reject не должен возвращать его второй раз)
+            restoreStock(o);
+        }
 
         var saved = orderRepository.save(o);
+        eventPublisher.publishEvent(new CatalogChangedEvent("order rejected"));
 
-        notifyService.notifyUserOrderRejected(saved, reason);
+        enqueueNotification(saved, OrderNotification.Kind.ORDER_REJECTED, reason);
         log.info("🧾 ORDER Order rejected uuid={}", saved.uuid());
         return saved;
     }
@@ -221,11 +229,26 @@ public class OrderService {
 
         var saved = orderRepository.save(o);
 
-        notifyService.notifyUserOrderShipped(saved);
+        enqueueNotification(saved, OrderNotification.Kind.ORDER_SHIPPED, null);
         log.info("🧾 ORDER Order shipped uuid={}", saved.uuid());
         return saved;
     }
 
+    @Transactional
+    public void delete(UUID uuid) {
+        log.info("🧾 ORDER Deleting order uuid={}", uuid);
+        OrderEntity o = orderRepository.findById(UuidUtil.toBytes(uuid))
+                .orElseThrow(() -> {
+                    log.warn("🧾 ORDER Delete failed: order not found uuid={}", uuid);
+                    return new IllegalArgumentException("Order not found: " + uuid);
+                });
+        // продажи считаются по всем заказам, включая отклонённые, — уходят только вместе с заказом
+        applySoldCounts(o, -1);
+        orderRepository.delete(o);
+        eventPublisher.publishEvent(new CatalogChangedEvent("order deleted"));
+        log.info("🧾 ORDER Order deleted uuid={}", uuid);
+    }
+
     public Optional<OrderEntity> findByAdminThread(long adminChatId, int adminThreadId) {
         return orderRepository.findByAdminChatIdAndAdminThreadId(adminChatId, adminThreadId);
     }
@@ -234,6 +257,46 @@ public class OrderService {
         return orderRepository.findById(UuidUtil.toBytes(uuid));
     }
 
+    /**
+     * Страница заказов для админки: сначала id по ключу (created_at, id), затем сами заказы с позициями.
+     * Курсор — непрозрачная строка из предыдущего ответа; null — первая страница.
+     */
+    public OrderPage findPage(OrderFilter filter, String cursor, int limit) {
+        int size = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        Instant afterCreatedAt = null;
+        byte[] afterId = null;
+        if (cursor != null && !cursor.isBlank()) {
+            var decoded = decodeCursor(cursor);
+            afterCreatedAt = decoded.createdAt();
+            afterId = UuidUtil.toBytes(decoded.id());
+        }
+
+        // на одну запись больше, чтобы понять, есть ли следующая страница
+        List<byte[]> ids = orderRepository.findPageIds(filter.status(), filter.tgUserId(),
+                filter.createdFrom(), filter.createdTo(), afterCreatedAt, afterId, size + 1);
+        boolean hasMore = ids.size() > size;
+        if (hasMore) {
+            ids = ids.subList(0, size);
+        }
+        if (ids.isEmpty()) {
+            return new OrderPage(List.of(), null);
+        }
+
+        Map<UUID, OrderEntity> byId = new HashMap<>();
+        orderRepository.findAllWithItemsByIdIn(ids).forEach(o -> byId.put(o.uuid(), o));
+        List<OrderEntity> orders = ids.stream()
+                .map(id -> byId.get(UuidUtil.fromBytes(id)))
+                .filter(o -> o != null)
+                .toList();
+        String nextCursor = hasMore && !orders.isEmpty() ? encodeCursor(orders.get(orders.size() - 1)) : null;
+        log.debug("🧾 ORDER Loaded order page size={} hasMore={}", orders.size(), hasMore);
+        return new OrderPage(orders, nextCursor);
+    }
+
+    public OrderRepository.OrderTotals summarize(OrderFilter filter) {
+        return orderRepository.summarize(filter.status(), filter.tgUserId(), filter.createdFrom(), filter.createdTo());
+    }
+
     public record CreateOrderCommand(
             long tgUserId,
             String tgUsername,
@@ -247,7 +310,40 @@ public class OrderService {
 
     public record Item(UUID productId, UUID variantId, int quantity) {}
 
-    private ProductVariant resolveVariant(Product product, UUID variantId) {
+    public record OrderFilter(String status, Long tgUserId, Instant createdFrom, Instant createdTo) {}
+
+    public record OrderPage(List<OrderEntity> orders, String nextCursor) {}
+
+    private record Cursor(Instant createdAt, UUID id) {}
+
+    private static String encodeCursor(OrderEntity last) {
+        String raw = last.getCreatedAt().getEpochSecond() + "." + last.getCreatedAt().getNano() + "." + last.uuid();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static Cursor decodeCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII);
+            String[] parts = raw.split("\\.", 3);
+            var createdAt = Instant.ofEpochSecond(Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+            return new Cursor(createdAt, UUID.fromString(parts[2]));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Bad cursor", e);
+        }
+    }
+
+    private Map<UUID, Product> loadProducts(List<Item> items) {
+        var ids = items.stream()
+                .map(Item::productId)
+                .distinct()
+                .map(UuidUtil::toBytes)
+                .toList();
+        Map<UUID, Product> products = new HashMap<>();
+        productRepository.findAllByIdIn(ids).forEach(p -> products.put(p.uuid(), p));
+        return products;
+    }
+
+    private ProductVariant resolveVariant(Product product, UUID variantId, Map<UUID, ProductVariant> variantsById) {
         var variants = product.getVariants();
         if (variants == null || variants.isEmpty()) {
             if (variantId != null) {
@@ -259,10 +355,106 @@ public class OrderService {
             log.warn("🧾 ORDER Missing variant for product={}", product.getTitle());
             throw new IllegalArgumentException("Variant required for product: " + product.getTitle());
         }
-        return variants.stream()
-            .filter(v -> variantId.equals(v.uuid()))
-            .findFirst()
-            .orElseThrow(() -> new IllegalArgumentException("Variant not found for product: " + product.getTitle()));
+        ProductVariant variant = variantsById.get(variantId);
+        if (variant == null || !Arrays.equals(variant.getProduct().getId(), product.getId())) {
+            throw new IllegalArgumentException("Variant not found for product: " + product.getTitle());
+        }
+        return variant;
+    }
+
+    /**
+     * Списывает остатки условными UPDATE ... WHERE stock >= ?: при гонке за последние штуки
+     * проигравший заказ получает 0 обновлённых строк и откатывается, в минус сток не уходит.
+     *
+     * Сначала блокируются строки товаров (по возрастанию id), потом вариантов — заказы на разные варианты
+     * одного товара встают в очередь на строке товара, а не ждут друг друга крест-накрест. Остаток товара
+     * с вариантами сдвигается на ту же дельту, без пересчёта суммы по вариантам в этой транзакции.
+     */
+    private void reserveStock(
+            Map<UUID, Product> products,
+            Map<UUID, Integer> productTotals,
+            Map<UUID, Integer> variantTotals,
+            Map<UUID, UUID> variantProducts
+    ) {
+        Map<UUID, Integer> variantSums = new TreeMap<>();
+        variantTotals.forEach((variantId, quantity) ->
+                variantSums.merge(variantProducts.get(variantId), quantity, Integer::sum));
+
+        Set<UUID> productIds = new TreeSet<>(productTotals.keySet());
+        productIds.addAll(variantSums.keySet());
+        for (UUID productId : productIds) {
+            Integer quantity = productTotals.get(productId);
+            if (quantity != null && productRepository.decrementStock(UuidUtil.toBytes(productId), quantity) == 0) {
+                Product p = products.get(productId);
+                log.warn("🧾 ORDER Order rejected: stock reservation failed product={} quantity={}",
+                        p.getTitle(), quantity);
+                throw new IllegalArgumentException("Not enough stock: " + p.getTitle());
+            }
+            Integer fromVariants = variantSums.get(productId);
+            if (fromVariants != null) {
+                // хватает ли — решает строка варианта ниже; здесь только держим сумму в согласии с вариантами
+                productRepository.adjustStock(UuidUtil.toBytes(productId), -fromVariants);
+            }
+        }
+        new TreeMap<>(variantTotals).forEach((variantId, quantity) -> {
+            if (productVariantRepository.decrementStock(UuidUtil.toBytes(variantId), quantity) == 0) {
+                Product p = products.get(variantProducts.get(variantId));
+                log.warn("🧾 ORDER Order rejected: stock reservation failed product={} variant={} quantity={}",
+                        p.getTitle(), variantId, quantity);
+                throw new IllegalArgumentException("Not enough stock: " + p.getTitle());
+            }
+        });
+    }
+
+    private void restoreStock(OrderEntity order) {
+        Map<UUID, Integer> productQuantities = new TreeMap<>();
+        Map<UUID, Integer> variantQuantities = new TreeMap<>();
+        Map<UUID, UUID> variantProducts = new HashMap<>();
+        for (var item : order.getItems()) {
+            UUID productId = UuidUtil.fromBytes(item.getProductId());
+            if (item.getVariantId() != null) {
+                UUID variantId = UuidUtil.fromBytes(item.getVariantId());
+                variantQuantities.merge(variantId, item.getQuantity(), Integer::sum);
+                variantProducts.put(variantId, productId);
+            } else {
+                productQuantities.merge(productId, item.getQuantity(), Integer::sum);
+            }
+        }
+        // порядок блокировок тот же, что в reserveStock: товары, затем варианты.
+        // Остаток товара растёт на всё возвращённое; если варианта уже нет, штуки остаются на самом товаре, как и раньше
+        variantQuantities.forEach((variantId, quantity) ->
+                productQuantities.merge(variantProducts.get(variantId), quantity, Integer::sum));
+        productQuantities.forEach((productId, quantity) -> {
+            productRepository.incrementStock(UuidUtil.toBytes(productId), quantity);
+            log.debug("🧾 ORDER Restored stock productId={} quantity={}", productId, quantity);
+        });
+        variantQuantities.forEach((variantId, quantity) ->
+                productVariantRepository.incrementStock(UuidUtil.toBytes(variantId), quantity));
+    }
+
+    private void enqueueNotification(OrderEntity order, OrderNotification.Kind kind, String reason) {
+        var notification = new OrderNotification();
+        notification.setOrderId(order.getId());
+        notification.setKind(kind);
+        notification.setReason(reason);
+        notificationRepository.save(notification);
+        eventPublisher.publishEvent(new OrderNotificationsQueued());
+    }
+
+    /** Сдвигает счётчики product_sales на количество позиций заказа; sign = 1 при создании заказа, -1 при удалении. */
+    private void applySoldCounts(OrderEntity order, int sign) {
+        Map<UUID, Long> quantities = new TreeMap<>();
+        for (var item : order.getItems()) {
+            quantities.merge(UuidUtil.fromBytes(item.getProductId()), (long) item.getQuantity(), Long::sum);
+        }
+        // фиксированный порядок блокировок строк, чтобы параллельные заказы не ловили дедлок
+        quantities.forEach((productId, quantity) -> {
+            if (sign > 0) {
+                productSalesRepository.addSold(UuidUtil.toBytes(productId), quantity);
+            } else {
+                productSalesRepository.subtractSold(UuidUtil.toBytes(productId), quantity);
+            }
+        });
     }
 
     private PromoCode resolvePromo(String promoCode) {
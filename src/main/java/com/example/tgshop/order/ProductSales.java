@@ -0,0 +1,25 @@
+package com.example.tgshop.order;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/** Счётчик проданных единиц товара по всем заказам; ведётся инкрементально при создании и удалении заказов. */
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+@Table(name = "product_sales")
+public class ProductSales {
+
+  @Id
+  @Column(name = "product_id", columnDefinition = "BINARY(16)")
+  private byte[] productId;
+
+  @Column(nullable = false)
+  private long sold;
+}
@@ -0,0 +1,19 @@
+package com.example.tgshop.order;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface ProductSalesRepository extends JpaRepository<ProductSales, byte[]> {
+
+  @Modifying
+  @Query(value = "INSERT INTO product_sales (product_id, sold) VALUES (:productId, :quantity) "
+      + "ON DUPLICATE KEY UPDATE sold = sold + :quantity", nativeQuery = true)
+  int addSold(@Param("productId") byte[] productId, @Param("quantity") long quantity);
+
+  @Modifying
+  @Query(value = "UPDATE product_sales SET sold = GREATEST(0, sold - :quantity) WHERE product_id = :productId",
+      nativeQuery = true)
+  int subtractSold(@Param("productId") byte[] productId, @Param("quantity") long quantity);
+}
@@ -13,6 +13,7 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 import lombok.ToString;
+import org.hibernate.annotations.BatchSize;
 
 @Getter
 @Setter
@@ -52,11 +53,13 @@ public class Product {
   @ToString.Exclude
   @OneToMany(mappedBy = "product", cascade = CascadeType.ALL, orphanRemoval = true)
   @OrderBy("sortOrder ASC")
+  @BatchSize(size = 100)
   private List<ProductImage> images = new ArrayList<>();
 
   @ToString.Exclude
   @OneToMany(mappedBy = "product", cascade = CascadeType.ALL, orphanRemoval = true)
   @OrderBy("sortOrder ASC")
+  @BatchSize(size = 100)
   private Set<ProductVariant> variants = new LinkedHashSet<>();
 
   @ToString.Exclude
@@ -67,6 +70,7 @@ public class Product {
       inverseJoinColumns = @JoinColumn(name = "tag_id")
   )
   @OrderBy("name ASC")
+  @BatchSize(size = 100)
   private Set<Tag> tags = new LinkedHashSet<>();
 
   @PrePersist
@@ -0,0 +1,54 @@
+package com.example.tgshop.product;
+
+import java.util.List;
+import java.util.Optional;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Загружает товары вместе с картинками, тегами и вариантами без декартова произведения:
+ * сначала сами товары, затем по одному IN-запросу на каждую коллекцию в той же сессии.
+ * Один join fetch по трём коллекциям давал images × tags × variants строк на товар.
+ */
+@Component
+@Slf4j
+public class ProductGraphLoader {
+
+  /** Ограничение на размер IN-списка в одном запросе. */
+  static final int CHUNK_SIZE = 1000;
+
+  private final ProductRepository productRepository;
+
+  public ProductGraphLoader(ProductRepository productRepository) {
+    this.productRepository = productRepository;
+  }
+
+  /** Активные товары витрины, новые первыми; коллекции инициализированы и после закрытия сессии. */
+  @Transactional(readOnly = true)
+  public List<Product> findActive() {
+    var products = productRepository.findActive();
+    fetchCollections(products);
+    return products;
+  }
+
+  /** Не readOnly: вызывающий меняет товар и сохраняет его. */
+  @Transactional
+  public Optional<Product> findById(byte[] id) {
+    var product = productRepository.findById(id);
+    product.ifPresent(p -> fetchCollections(List.of(p)));
+    return product;
+  }
+
+  void fetchCollections(List<Product> products) {
+    for (int from = 0; from < products.size(); from += CHUNK_SIZE) {
+      var ids = products.subList(from, Math.min(products.size(), from + CHUNK_SIZE)).stream()
+          .map(Product::getId)
+          .toList();
+      productRepository.fetchImages(ids);
+      productRepository.fetchTags(ids);
+      productRepository.fetchVariants(ids);
+    }
+    log.debug("📚 CATALOG Loaded collections for {} products", products.size());
+  }
+}
@@ -1,24 +1,67 @@
 package com.example.tgshop.product;
 
+import java.util.Collection;
 import java.util.List;
-import java.util.Optional;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
 public interface ProductRepository extends JpaRepository<Product, byte[]> {
 
-  @Query("select distinct p from Product p left join fetch p.images left join fetch p.tags left join fetch p.variants where p.active = true and p.archived = false order by p.createdAt desc")
-  List<Product> findActiveWithImages();
+  @Query("select p from Product p where p.active = true and p.archived = false order by p.createdAt desc")
+  List<Product> findActive();
 
-  @Query("select distinct p from Product p left join fetch p.images left join fetch p.tags left join fetch p.variants where p.archived = false order by p.createdAt desc")
-  List<Product> findAllWithImages();
+  /**
+   * Картинки товаров, уже загруженных в сессию: Hibernate дозаполняет их коллекции, и строк
+   * в выдаче столько же, сколько картинок, а не произведение коллекций. Граф собирает {@link ProductGraphLoader}.
+   */
+  @Query("select distinct p from Product p left join fetch p.images where p.id in :ids")
+  List<Product> fetchImages(@Param("ids") Collection<byte[]> ids);
 
-  @Query("select distinct p from Product p left join fetch p.images left join fetch p.tags left join fetch p.variants where p.archived = true order by p.createdAt desc")
-  List<Product> findArchivedWithImages();
+  /** Теги товаров, уже загруженных в сессию; см. {@link #fetchImages}. */
+  @Query("select distinct p from Product p left join fetch p.tags where p.id in :ids")
+  List<Product> fetchTags(@Param("ids") Collection<byte[]> ids);
 
-  @Query("select p from Product p left join fetch p.images left join fetch p.tags left join fetch p.variants where p.id = :id")
-  Optional<Product> findByIdWithImages(@Param("id") byte[] id);
+  /** Варианты товаров, уже загруженных в сессию; см. {@link #fetchImages}. */
+  @Query("select distinct p from Product p left join fetch p.variants where p.id in :ids")
+  List<Product> fetchVariants(@Param("ids") Collection<byte[]> ids);
+
+  /**
+   * Страница товаров для админки без join fetch: картинки, теги и варианты догружаются
+   * пачками через @BatchSize, по одному IN-запросу на коллекцию.
+   */
+  @Query("select p from Product p where p.archived = :archived "
+      + "and (:titlePattern is null or lower(p.title) like :titlePattern escape '!') "
+      + "and (:tagId is null or exists ("
+      + "select 1 from Product tp join tp.tags t where tp.id = p.id and t.id = :tagId))")
+  Page<Product> findAdminPage(
+      @Param("archived") boolean archived,
+      @Param("titlePattern") String titlePattern,
+      @Param("tagId") byte[] tagId,
+      Pageable pageable
+  );
+
+  /** Товары корзины вместе с вариантами одним запросом. */
+  @Query("select distinct p from Product p left join fetch p.variants where p.id in :ids")
+  List<Product> findAllByIdIn(@Param("ids") Collection<byte[]> ids);
+
+  /** Списывает остаток, только если его хватает; 0 обновлённых строк — товара недостаточно. */
+  @Modifying
+  @Query(value = "UPDATE products SET stock = stock - :quantity WHERE id = :id AND stock >= :quantity",
+      nativeQuery = true)
+  int decrementStock(@Param("id") byte[] id, @Param("quantity") int quantity);
+
+  @Modifying
+  @Query(value = "UPDATE products SET stock = stock + :quantity WHERE id = :id", nativeQuery = true)
+  int incrementStock(@Param("id") byte[] id, @Param("quantity") int quantity);
+
+  /** Сдвиг остатка товара с вариантами вслед за вариантами; сами варианты проверяют, хватает ли. */
+  @Modifying
+  @Query(value = "UPDATE products SET stock = GREATEST(stock + :delta, 0) WHERE id = :id", nativeQuery = true)
+  int adjustStock(@Param("id") byte[] id, @Param("delta") int delta);
 
   boolean existsByTitleIgnoreCase(String title);
 
@@ -0,0 +1,19 @@
+package com.example.tgshop.product;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface ProductVariantRepository extends JpaRepository<ProductVariant, byte[]> {
+
+  /** Списывает остаток, только если его хватает; 0 обновлённых строк — товара недостаточно. */
+  @Modifying
+  @Query(value = "UPDATE product_variants SET stock = stock - :quantity WHERE id = :id AND stock >= :quantity",
+      nativeQuery = true)
+  int decrementStock(@Param("id") byte[] id, @Param("quantity") int quantity);
+
+  @Modifying
+  @Query(value = "UPDATE product_variants SET stock = stock + :quantity WHERE id = :id", nativeQuery = true)
+  int incrementStock(@Param("id") byte[] id, @Param("quantity") int quantity);
+}
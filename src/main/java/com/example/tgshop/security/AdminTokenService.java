@@ -0,0 +1,107 @@
+package com.example.tgshop.security;
+
+import com.example.tgshop.config.AppProperties;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Optional;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+/**
+ * Короткоживущие токены админки: base64url("userId:expiresAt") + "." + base64url(HMAC_SHA256).
+ * Проверка — один HMAC без обращения к БД. userId = 0 означает вход по паролю.
+ *
+ * Ключ берётся из app.security.admin-token-secret, иначе выводится из токена бота;
+ * если нет ни того ни другого — случайный, и токены не переживают рестарт.
+ */
+@Component
+@Slf4j
+public class AdminTokenService {
+
+  public record Claims(long userId, Instant expiresAt) {}
+
+  public record IssuedToken(String token, Instant expiresAt) {}
+
+  private static final String HMAC = "HmacSHA256";
+  private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+  private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+  private final AppProperties props;
+  private final SecretKeySpec key;
+  private final ThreadLocal<Mac> mac = ThreadLocal.withInitial(this::newMac);
+
+  public AdminTokenService(AppProperties props) {
+    this.props = props;
+    this.key = new SecretKeySpec(deriveKey(props), HMAC);
+  }
+
+  public IssuedToken issue(long userId) {
+    Instant expiresAt = Instant.now().plus(props.getSecurity().getAdminTokenTtl());
+    String payload = ENCODER.encodeToString(
+        (userId + ":" + expiresAt.getEpochSecond()).getBytes(StandardCharsets.US_ASCII));
+    String token = payload + "." + ENCODER.encodeToString(sign(payload));
+    log.debug("🔐 AUTH Issued admin token userId={} expiresAt={}", userId, expiresAt);
+    return new IssuedToken(token, expiresAt);
+  }
+
+  public Optional<Claims> verify(String token) {
+    if (token == null || token.isBlank()) return Optional.empty();
+    int dot = token.indexOf('.');
+    if (dot <= 0 || dot == token.length() - 1) return Optional.empty();
+    String payload = token.substring(0, dot);
+    try {
+      byte[] signature = DECODER.decode(token.substring(dot + 1));
+      if (!MessageDigest.isEqual(sign(payload), signature)) return Optional.empty();
+      String decoded = new String(DECODER.decode(payload), StandardCharsets.US_ASCII);
+      int sep = decoded.indexOf(':');
+      if (sep <= 0) return Optional.empty();
+      long userId = Long.parseLong(decoded.substring(0, sep));
+      Instant expiresAt = Instant.ofEpochSecond(Long.parseLong(decoded.substring(sep + 1)));
+      if (expiresAt.isBefore(Instant.now())) return Optional.empty();
+      return Optional.of(new Claims(userId, expiresAt));
+    } catch (IllegalArgumentException e) {
+      return Optional.empty();
+    }
+  }
+
+  private byte[] sign(String payload) {
+    return mac.get().doFinal(payload.getBytes(StandardCharsets.US_ASCII));
+  }
+
+  private Mac newMac() {
+    try {
+      Mac m = Mac.getInstance(HMAC);
+      m.init(key);
+      return m;
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("Failed to init admin token HMAC", e);
+    }
+  }
+
+  private static byte[] deriveKey(AppProperties props) {
+    String secret = props.getSecurity().getAdminTokenSecret();
+    if (secret != null && !secret.isBlank()) {
+      return secret.getBytes(StandardCharsets.UTF_8);
+    }
+    String botToken = props.getTelegram().getBotToken();
+    if (botToken != null && !botToken.isBlank()) {
+      try {
+        Mac m = Mac.getInstance(HMAC);
+        m.init(new SecretKeySpec("AdminToken".getBytes(StandardCharsets.UTF_8), HMAC));
+        return m.doFinal(botToken.getBytes(StandardCharsets.UTF_8));
+      } catch (GeneralSecurityException e) {
+        throw new IllegalStateException("Failed to derive admin token key", e);
+      }
+    }
+    log.warn("🔐 AUTH No admin token secret configured, admin sessions will not survive restart");
+    byte[] random = new byte[32];
+    new SecureRandom().nextBytes(random);
+    return random;
+  }
+}
@@ -1,11 +1,17 @@
 package com.example.tgshop.security;
 
 import com.example.tgshop.config.AppProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
-import java.util.HashMap;
-import java.util.Map;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.TreeMap;
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
 import lombok.extern.slf4j.Slf4j;
@@ -19,6 +25,11 @@ import org.springframework.stereotype.Component;
  * 2) отсортировать пары по ключу
  * 3) secretKey = HMAC_SHA256(message=botToken, key="WebAppData")
  * 4) calcHash  = HMAC_SHA256(message=data_check_string, key=secretKey)
+ *
+ * secretKey зависит только от токена бота, поэтому считается один раз; Mac переиспользуется per-thread.
+ * Успешно проверенные строки кэшируются по hash до auth_date + init-data-max-age:
+ * админка шлёт одну и ту же initData на каждый запрос, повторная проверка не нужна.
+ * Более старая initData отклоняется совсем — это и есть окно против replay.
  */
 @Component
 @Slf4j
@@ -33,10 +44,20 @@ public class TgInitDataValidator {
       long authDate
   ) {}
 
+  private static final String HMAC = "HmacSHA256";
+
   private final AppProperties props;
+  private final ThreadLocal<Mac> dataMac = ThreadLocal.withInitial(this::newDataMac);
+  private volatile SecretKeySpec secretKey;
+  private final Cache<String, Verified> verified;
 
   public TgInitDataValidator(AppProperties props) {
     this.props = props;
+    this.verified = Caffeine.newBuilder()
+        .maximumSize(props.getSecurity().getInitDataCacheSize())
+        .expireAfter(Expiry.creating((String hash, Verified v) -> Duration.ofSeconds(Math.max(0,
+            v.result().authDate() + maxAge().toSeconds() - Instant.now().getEpochSecond()))))
+        .build();
   }
 
   public Result validate(String initData) {
@@ -45,7 +66,24 @@ public class TgInitDataValidator {
       return new Result(false, 0, null, null, null, 0);
     }
 
-    Map<String, String> data = parseQueryString(initData);
+    String hash = hashParam(initData);
+    if (hash != null) {
+      // ключ — только hash, поэтому совпадение всей строки обязательно
+      Verified hit = verified.getIfPresent(hash);
+      if (hit != null && hit.initData().equals(initData) && !isExpired(hit.result().authDate())) {
+        return hit.result();
+      }
+    }
+
+    Result result = verify(initData);
+    if (result.ok() && hash != null && !props.getSecurity().isAllowUnsignedInitData()) {
+      verified.put(hash, new Verified(initData, result));
+    }
+    return result;
+  }
+
+  private Result verify(String initData) {
+    TreeMap<String, String> data = parseQueryString(initData);
     String receivedHash = data.remove("hash");
     if (receivedHash == null || receivedHash.isBlank()) {
       log.warn("🔐 AUTH InitData validation failed: missing hash");
@@ -55,23 +93,21 @@ public class TgInitDataValidator {
     long authDate = parseLongSafe(data.get("auth_date"));
 
     if (!props.getSecurity().isAllowUnsignedInitData()) {
-      String dataCheckString = data.entrySet().stream()
-          .sorted(Map.Entry.comparingByKey())
-          .map(e -> e.getKey() + "=" + e.getValue())
-          .reduce((a, b) -> a + "\n" + b)
-          .orElse("");
-
-      String computed;
+      byte[] computed;
       try {
-        computed = computeHashHex(props.getTelegram().getBotToken(), dataCheckString);
-      } catch (GeneralSecurityException e) {
+        computed = computeHash(data);
+      } catch (GeneralSecurityException | IllegalStateException e) {
         log.error("🔐 AUTH InitData validation failed: hash computation error", e);
         return new Result(false, 0, null, null, null, 0);
       }
-      if (!computed.equalsIgnoreCase(receivedHash)) {
+      if (!MessageDigest.isEqual(computed, parseHexSafe(receivedHash))) {
         log.warn("🔐 AUTH InitData validation failed: hash mismatch");
         return new Result(false, 0, null, null, null, 0);
       }
+      if (isExpired(authDate)) {
+        log.warn("🔐 AUTH InitData validation failed: auth_date={} is older than {}", authDate, maxAge());
+        return new Result(false, 0, null, null, null, 0);
+      }
     }
 
     String userJson = data.get("user");
@@ -85,36 +121,95 @@ public class TgInitDataValidator {
     return new Result(true, user.id(), user.username(), user.firstName(), user.lastName(), authDate);
   }
 
-  private static Map<String, String> parseQueryString(String qs) {
-    Map<String, String> out = new HashMap<>();
-    for (String part : qs.split("&")) {
-      int idx = part.indexOf('=');
-      if (idx <= 0) continue;
-      String k = URLDecoder.decode(part.substring(0, idx), StandardCharsets.UTF_8);
-      String v = URLDecoder.decode(part.substring(idx + 1), StandardCharsets.UTF_8);
-      out.put(k, v);
+  private boolean isExpired(long authDate) {
+    return authDate + maxAge().toSeconds() < Instant.now().getEpochSecond();
+  }
+
+  private Duration maxAge() {
+    return props.getSecurity().getInitDataMaxAge();
+  }
+
+  private static String hashParam(String qs) {
+    int start;
+    if (qs.startsWith("hash=")) {
+      start = 5;
+    } else {
+      int idx = qs.indexOf("&hash=");
+      if (idx < 0) return null;
+      start = idx + 6;
+    }
+    int end = qs.indexOf('&', start);
+    String hash = end < 0 ? qs.substring(start) : qs.substring(start, end);
+    return hash.isEmpty() ? null : hash;
+  }
+
+  private record Verified(String initData, Result result) {}
+
+  /** Один проход по строке без split/regex; TreeMap сразу даёт порядок ключей для data_check_string. */
+  private static TreeMap<String, String> parseQueryString(String qs) {
+    TreeMap<String, String> out = new TreeMap<>();
+    int start = 0;
+    int length = qs.length();
+    while (start <= length) {
+      int end = qs.indexOf('&', start);
+      if (end < 0) end = length;
+      int idx = qs.indexOf('=', start);
+      if (idx > start && idx < end) {
+        out.put(decode(qs.substring(start, idx)), decode(qs.substring(idx + 1, end)));
+      }
+      start = end + 1;
     }
     return out;
   }
 
-  private static String computeHashHex(String botToken, String dataCheckString) throws GeneralSecurityException {
-    if (botToken == null || botToken.isBlank()) throw new GeneralSecurityException("BOT_TOKEN is empty");
+  private static String decode(String s) {
+    if (s.indexOf('%') < 0 && s.indexOf('+') < 0) return s;
+    return URLDecoder.decode(s, StandardCharsets.UTF_8);
+  }
 
-    byte[] secretKey = hmacSha256("WebAppData".getBytes(StandardCharsets.UTF_8), botToken.getBytes(StandardCharsets.UTF_8));
-    byte[] signature = hmacSha256(secretKey, dataCheckString.getBytes(StandardCharsets.UTF_8));
-    return toHex(signature);
+  private byte[] computeHash(TreeMap<String, String> data) throws GeneralSecurityException {
+    // data_check_string пишем прямо в Mac, без промежуточной строки
+    Mac mac = dataMac.get();
+    boolean first = true;
+    for (var entry : data.entrySet()) {
+      if (!first) mac.update((byte) '\n');
+      first = false;
+      mac.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+      mac.update((byte) '=');
+      mac.update(entry.getValue().getBytes(StandardCharsets.UTF_8));
+    }
+    return mac.doFinal();
+  }
+
+  private Mac newDataMac() {
+    try {
+      Mac mac = Mac.getInstance(HMAC);
+      mac.init(secretKey());
+      return mac;
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("Failed to init initData HMAC", e);
+    }
   }
 
-  private static byte[] hmacSha256(byte[] key, byte[] message) throws GeneralSecurityException {
-    Mac mac = Mac.getInstance("HmacSHA256");
-    mac.init(new SecretKeySpec(key, "HmacSHA256"));
-    return mac.doFinal(message);
+  private SecretKeySpec secretKey() throws GeneralSecurityException {
+    SecretKeySpec key = secretKey;
+    if (key == null) {
+      String botToken = props.getTelegram().getBotToken();
+      if (botToken == null || botToken.isBlank()) throw new GeneralSecurityException("BOT_TOKEN is empty");
+      Mac mac = Mac.getInstance(HMAC);
+      mac.init(new SecretKeySpec("WebAppData".getBytes(StandardCharsets.UTF_8), HMAC));
+      key = new SecretKeySpec(mac.doFinal(botToken.getBytes(StandardCharsets.UTF_8)), HMAC);
+      secretKey = key;
+    }
+    return key;
   }
 
-  private static String toHex(byte[] bytes) {
-    StringBuilder sb = new StringBuilder(bytes.length * 2);
-    for (byte b : bytes) sb.append(String.format("%02x", b));
-    return sb.toString();
+  private static byte[] parseHexSafe(String hex) {
+    try {
+      return HexFormat.of().parseHex(hex);
+    } catch (IllegalArgumentException e) {
+      return new byte[0];
+    }
   }
 
   private static long parseLongSafe(String v) {
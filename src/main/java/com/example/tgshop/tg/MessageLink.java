@@ -0,0 +1,60 @@
+package com.example.tgshop.tg;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Связь сообщения (chat_id, message_id) с зеркальным сообщением и/или заказом.
+ * Хранится до expires_at, чтобы маршрутизация ответов переживала рестарт и работала на нескольких инстансах.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+@Table(name = "tg_message_links")
+public class MessageLink {
+
+  public enum Kind {
+    /** Сообщение админа в теме заказа → копия у пользователя. */
+    ADMIN_TO_USER,
+    /** Сообщение админа в теме заказа → заголовок «ответ от магазина» у пользователя. */
+    ADMIN_TO_USER_HEADER,
+    /** Сообщение пользователя → копия в теме заказа (плюс заказ). */
+    USER_TO_ADMIN,
+    /** Сообщение у пользователя, ответ на которое уходит в тему заказа. */
+    REPLY_ANCHOR,
+    /** Запрос ТТН в админ-чате → карточка заказа. */
+    PENDING_SHIPMENT,
+    /** Запрос причины отклонения в админ-чате → карточка заказа. */
+    PENDING_REJECTION
+  }
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private Long id;
+
+  @Enumerated(EnumType.STRING)
+  @Column(nullable = false, length = 24)
+  private Kind kind;
+
+  @Column(name = "chat_id", nullable = false)
+  private long chatId;
+
+  @Column(name = "message_id", nullable = false)
+  private int messageId;
+
+  @Column(name = "target_chat_id")
+  private Long targetChatId;
+
+  @Column(name = "target_message_id")
+  private Integer targetMessageId;
+
+  @Column(name = "order_id", columnDefinition = "BINARY(16)")
+  private byte[] orderId;
+
+  @Column(name = "expires_at", nullable = false)
+  private Instant expiresAt;
+}
@@ -0,0 +1,57 @@
+package com.example.tgshop.tg;
+
+import java.time.Instant;
+import java.util.Optional;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+public interface MessageLinkRepository extends JpaRepository<MessageLink, Long> {
+
+  @Query("select l from MessageLink l where l.kind = :kind and l.chatId = :chatId and l.messageId = :messageId "
+      + "and l.expiresAt > :now")
+  Optional<MessageLink> findActive(
+      @Param("kind") MessageLink.Kind kind,
+      @Param("chatId") long chatId,
+      @Param("messageId") int messageId,
+      @Param("now") Instant now
+  );
+
+  @Modifying
+  @Transactional
+  @Query(value = "INSERT INTO tg_message_links "
+      + "(kind, chat_id, message_id, target_chat_id, target_message_id, order_id, expires_at) "
+      + "VALUES (:kind, :chatId, :messageId, :targetChatId, :targetMessageId, :orderId, :expiresAt) "
+      + "ON DUPLICATE KEY UPDATE target_chat_id = VALUES(target_chat_id), "
+      + "target_message_id = VALUES(target_message_id), order_id = VALUES(order_id), "
+      + "expires_at = VALUES(expires_at)",
+      nativeQuery = true)
+  int upsert(
+      @Param("kind") String kind,
+      @Param("chatId") long chatId,
+      @Param("messageId") int messageId,
+      @Param("targetChatId") Long targetChatId,
+      @Param("targetMessageId") Integer targetMessageId,
+      @Param("orderId") byte[] orderId,
+      @Param("expiresAt") Instant expiresAt
+  );
+
+  /** Возвращает 1 только тому инстансу, который удалил строку первым. */
+  @Modifying
+  @Transactional
+  @Query("delete from MessageLink l where l.kind = :kind and l.chatId = :chatId and l.messageId = :messageId")
+  int deleteLink(
+      @Param("kind") MessageLink.Kind kind,
+      @Param("chatId") long chatId,
+      @Param("messageId") int messageId
+  );
+
+  @Modifying
+  @Transactional
+  @Query(value = "DELETE FROM tg_message_links WHERE expires_at < :now LIMIT :limit", nativeQuery = true)
+  int deleteExpired(@Param("now") Instant now, @Param("limit") int limit);
+}
@@ -0,0 +1,143 @@
+package com.example.tgshop.tg;
+
+import com.example.tgshop.common.UuidUtil;
+import com.example.tgshop.config.AppProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Связи между сообщениями для зеркалирования переписки по заказу и ожидающих ответа запросов (ТТН, причина).
+ *
+ * Источник правды — таблица tg_message_links со сроком жизни; поверх неё ограниченный по размеру кэш
+ * с ключами из примитивов. Промах кэша читает БД, поэтому ответ можно обработать на любом инстансе
+ * и после рестарта. Ожидающие запросы забираются через DELETE — выиграет ровно один инстанс.
+ */
+@Component
+@Slf4j
+public class MessageLinkStore {
+
+    public record ChatKey(long chatId, int messageId) {}
+
+    /** {@code target} или {@code orderId} могут быть null — зависит от вида связи. */
+    public record Link(ChatKey target, UUID orderId) {}
+
+    private record Key(MessageLink.Kind kind, long chatId, int messageId) {}
+
+    /** {@code persisted = false} — строку записать не удалось, связь есть только в памяти этого инстанса. */
+    private record Entry(Link link, boolean persisted) {}
+
+    private static final int PURGE_BATCH = 5000;
+
+    private final MessageLinkRepository repository;
+    private final AppProperties.Telegram config;
+    private final Cache<Key, Entry> cache;
+
+    public MessageLinkStore(MessageLinkRepository repository, AppProperties props, MeterRegistry meterRegistry) {
+        this.repository = repository;
+        this.config = props.getTelegram();
+        this.cache = Caffeine.newBuilder()
+            .maximumSize(config.getMessageLinkCacheSize())
+            .expireAfterWrite(config.getMessageLinkCacheTtl())
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "tg.message_links");
+    }
+
+    public void put(MessageLink.Kind kind, ChatKey source, ChatKey target, UUID orderId) {
+        var link = new Link(target, orderId);
+        var key = new Key(kind, source.chatId(), source.messageId());
+        cache.put(key, new Entry(link, true));
+        try {
+            repository.upsert(
+                kind.name(),
+                source.chatId(),
+                source.messageId(),
+                target != null ? target.chatId() : null,
+                target != null ? target.messageId() : null,
+                orderId != null ? UuidUtil.toBytes(orderId) : null,
+                Instant.now().plus(ttl(kind))
+            );
+        } catch (Exception e) {
+            // связь останется хотя бы в памяти этого инстанса; take отдаст её без DELETE
+            cache.put(key, new Entry(link, false));
+            log.error("🤖 TG Failed to persist message link kind={} source={}", kind, source, e);
+        }
+    }
+
+    public Optional<Link> get(MessageLink.Kind kind, ChatKey source) {
+        var key = new Key(kind, source.chatId(), source.messageId());
+        Entry cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return Optional.of(cached.link());
+        }
+        Optional<Link> loaded = load(kind, source);
+        loaded.ifPresent(link -> cache.put(key, new Entry(link, true)));
+        return loaded;
+    }
+
+    /** Одноразовые связи (ожидающие ответа запросы): возвращает связь только тому, кто её удалил. */
+    public Optional<Link> take(MessageLink.Kind kind, ChatKey source) {
+        var key = new Key(kind, source.chatId(), source.messageId());
+        Entry cached = cache.asMap().remove(key);
+        if (cached != null && !cached.persisted()) {
+            // строки в БД нет — удалять нечего, связь забирает тот, кто убрал её из кэша
+            return Optional.of(cached.link());
+        }
+        Link link = cached != null ? cached.link() : load(kind, source).orElse(null);
+        if (link == null) {
+            return Optional.empty();
+        }
+        try {
+            if (repository.deleteLink(kind, source.chatId(), source.messageId()) == 0) {
+                log.debug("🤖 TG Message link kind={} source={} already taken", kind, source);
+                return Optional.empty();
+            }
+        } catch (Exception e) {
+            log.error("🤖 TG Failed to delete message link kind={} source={}", kind, source, e);
+        }
+        return Optional.of(link);
+    }
+
+    @Scheduled(fixedDelayString = "${app.telegram.message-link-purge-interval-ms:3600000}")
+    public void purgeExpired() {
+        int deleted;
+        int total = 0;
+        do {
+            deleted = repository.deleteExpired(Instant.now(), PURGE_BATCH);
+            total += deleted;
+        } while (deleted == PURGE_BATCH);
+        if (total > 0) {
+            log.info("🤖 TG Purged {} expired message links", total);
+        }
+    }
+
+    private Optional<Link> load(MessageLink.Kind kind, ChatKey source) {
+        try {
+            return repository.findActive(kind, source.chatId(), source.messageId(), Instant.now())
+                .map(row -> new Link(
+                    row.getTargetChatId() != null && row.getTargetMessageId() != null
+                        ? new ChatKey(row.getTargetChatId(), row.getTargetMessageId())
+                        : null,
+                    row.getOrderId() != null ? UuidUtil.fromBytes(row.getOrderId()) : null));
+        } catch (Exception e) {
+            log.error("🤖 TG Failed to load message link kind={} source={}", kind, source, e);
+            return Optional.empty();
+        }
+    }
+
+    private Duration ttl(MessageLink.Kind kind) {
+        return switch (kind) {
+            case PENDING_SHIPMENT, PENDING_REJECTION -> config.getPendingPromptTtl();
+            default -> config.getMessageLinkTtl();
+        };
+    }
+}
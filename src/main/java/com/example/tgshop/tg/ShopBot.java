@@ -5,12 +5,12 @@ import com.example.tgshop.order.OrderEntity;
 import com.example.tgshop.order.OrderService; // <-- добавь свой сервис
 import com.example.tgshop.settings.Setting;
 import com.example.tgshop.settings.SettingRepository;
+import com.example.tgshop.tg.MessageLinkStore.ChatKey;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Lazy;
@@ -42,6 +42,7 @@ import org.telegram.telegrambots.meta.api.objects.replykeyboard.ForceReplyKeyboa
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
 import org.telegram.telegrambots.meta.api.objects.webapp.WebAppInfo;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
 @Component
 @Slf4j
@@ -51,25 +52,27 @@ public class ShopBot extends TelegramLongPollingBot {
     private final SettingRepository settings;
     private final OrderService orderService;
     private final TelegramNotifyService notifyService;
-    private final Map<Integer, PendingShipment> pendingShipments = new ConcurrentHashMap<>();
-    private final Map<Integer, PendingRejection> pendingRejections = new ConcurrentHashMap<>();
-    private final Map<ChatKey, ChatKey> adminToUserMap = new ConcurrentHashMap<>();
-    private final Map<ChatKey, ChatKey> adminToUserHeaderMap = new ConcurrentHashMap<>();
-    private final Map<ChatKey, ChatKey> userToAdminMap = new ConcurrentHashMap<>();
-    private final Map<ChatKey, UUID> replyAnchorMap = new ConcurrentHashMap<>();
-    private final Map<ChatKey, UUID> userMessageOrderMap = new ConcurrentHashMap<>();
+    private final TelegramSendQueue sendQueue;
+    private final UpdateDispatcher updateDispatcher;
+    private final MessageLinkStore links;
 
     public ShopBot(
         AppProperties props,
         SettingRepository settings,
         @Lazy TelegramNotifyService notifyService,
-        OrderService orderService
+        OrderService orderService,
+        TelegramSendQueue sendQueue,
+        UpdateDispatcher updateDispatcher,
+        MessageLinkStore links
     ) {
         super(props.getTelegram().getBotToken());
         this.props = props;
         this.settings = settings;
         this.notifyService = notifyService;
         this.orderService = orderService;
+        this.sendQueue = sendQueue;
+        this.updateDispatcher = updateDispatcher;
+        this.links = links;
     }
 
     @Override
@@ -77,9 +80,14 @@ public class ShopBot extends TelegramLongPollingBot {
         return props.getTelegram().getBotUsername();
     }
 
+    /** Поток long polling только раздаёт апдейты; обработка идёт в {@link UpdateDispatcher}. */
     @Override
     public void onUpdateReceived(Update update) {
         if (update == null) return;
+        updateDispatcher.dispatch(update, this::handleUpdate);
+    }
+
+    private void handleUpdate(Update update) {
 
         if (update.hasEditedMessage()) {
             handleEditedMessage(update.getEditedMessage());
@@ -160,9 +168,8 @@ public class ShopBot extends TelegramLongPollingBot {
             }
         }
 
-        if (userToAdminMap.containsKey(sourceKey)) {
-            updateUserMirrorMessage(message, sourceKey);
-        }
+        links.get(MessageLink.Kind.USER_TO_ADMIN, sourceKey)
+            .ifPresent(link -> updateUserMirrorMessage(message, link));
     }
 
     private boolean handleOrderChatMessage(Message message, long userId) {
@@ -192,17 +199,17 @@ public class ShopBot extends TelegramLongPollingBot {
         }
 
         ChatKey headerKey = new ChatKey(headerMessage.getChatId(), headerMessage.getMessageId());
-        adminToUserHeaderMap.put(sourceKey, headerKey);
-        replyAnchorMap.put(headerKey, order.uuid());
+        links.put(MessageLink.Kind.ADMIN_TO_USER_HEADER, sourceKey, headerKey, null);
+        links.put(MessageLink.Kind.REPLY_ANCHOR, headerKey, null, order.uuid());
 
         if (isMediaMessage(message)) {
             Message sent = sendMessageToUser(order.getTgUserId(), message, headerMessage.getMessageId());
             if (sent != null) {
                 ChatKey targetKey = new ChatKey(order.getTgUserId(), sent.getMessageId());
-                adminToUserMap.put(sourceKey, targetKey);
+                links.put(MessageLink.Kind.ADMIN_TO_USER, sourceKey, targetKey, null);
             }
         } else {
-            adminToUserMap.put(sourceKey, headerKey);
+            links.put(MessageLink.Kind.ADMIN_TO_USER, sourceKey, headerKey, null);
         }
 
         return true;
@@ -217,7 +224,9 @@ public class ShopBot extends TelegramLongPollingBot {
         }
 
         ChatKey replyKey = new ChatKey(message.getChatId(), message.getReplyToMessage().getMessageId());
-        UUID orderId = replyAnchorMap.get(replyKey);
+        UUID orderId = links.get(MessageLink.Kind.REPLY_ANCHOR, replyKey)
+            .map(MessageLinkStore.Link::orderId)
+            .orElse(null);
         if (orderId == null) {
             return false;
         }
@@ -235,8 +244,7 @@ public class ShopBot extends TelegramLongPollingBot {
         if (sent != null) {
             ChatKey sourceKey = new ChatKey(message.getChatId(), message.getMessageId());
             ChatKey targetKey = new ChatKey(order.getAdminChatId(), sent.getMessageId());
-            userToAdminMap.put(sourceKey, targetKey);
-            userMessageOrderMap.put(sourceKey, order.uuid());
+            links.put(MessageLink.Kind.USER_TO_ADMIN, sourceKey, targetKey, order.uuid());
         }
         return true;
     }
@@ -382,7 +390,9 @@ public class ShopBot extends TelegramLongPollingBot {
     }
 
     private void updateAdminMirrorMessage(OrderEntity order, Message message, ChatKey sourceKey) {
-        ChatKey headerKey = adminToUserHeaderMap.get(sourceKey);
+        ChatKey headerKey = links.get(MessageLink.Kind.ADMIN_TO_USER_HEADER, sourceKey)
+            .map(MessageLinkStore.Link::target)
+            .orElse(null);
         if (headerKey != null) {
             String headerText = buildAdminHeaderText(order, message);
             safeExecute(EditMessageText.builder()
@@ -394,15 +404,14 @@ public class ShopBot extends TelegramLongPollingBot {
         }
 
         if (isMediaMessage(message)) {
-            ChatKey targetKey = adminToUserMap.get(sourceKey);
-            if (targetKey != null) {
-                updateMirroredCaption(message, targetKey);
-            }
+            links.get(MessageLink.Kind.ADMIN_TO_USER, sourceKey)
+                .map(MessageLinkStore.Link::target)
+                .ifPresent(targetKey -> updateMirroredCaption(message, targetKey));
         }
     }
 
-    private void updateUserMirrorMessage(Message message, ChatKey sourceKey) {
-        UUID orderId = userMessageOrderMap.get(sourceKey);
+    private void updateUserMirrorMessage(Message message, MessageLinkStore.Link link) {
+        UUID orderId = link.orderId();
         if (orderId == null) {
             return;
         }
@@ -416,9 +425,8 @@ public class ShopBot extends TelegramLongPollingBot {
             return;
         }
 
-        ChatKey targetKey = userToAdminMap.get(sourceKey);
-        if (targetKey != null) {
-            updateMirroredTextOrCaption(message, targetKey);
+        if (link.target() != null) {
+            updateMirroredTextOrCaption(message, link.target());
         }
     }
 
@@ -551,7 +559,8 @@ public class ShopBot extends TelegramLongPollingBot {
                 orderService.findByUuid(uuid).ifPresentOrElse(order -> {
                     Message sent = notifyService.notifyUserPaymentRequest(order);
                     if (sent != null) {
-                        replyAnchorMap.put(new ChatKey(order.getTgUserId(), sent.getMessageId()), order.uuid());
+                        links.put(MessageLink.Kind.REPLY_ANCHOR,
+                            new ChatKey(order.getTgUserId(), sent.getMessageId()), null, order.uuid());
                     }
                     safeExecute(AnswerCallbackQuery.builder()
                         .callbackQueryId(cb.getId())
@@ -697,11 +706,10 @@ public class ShopBot extends TelegramLongPollingBot {
 
         Message promptMessage = safeExecuteMessage(prompt);
         if (promptMessage != null) {
-            pendingShipments.put(promptMessage.getMessageId(), new PendingShipment(
-                uuid,
-                cb.getMessage().getChatId(),
-                cb.getMessage().getMessageId()
-            ));
+            links.put(MessageLink.Kind.PENDING_SHIPMENT,
+                new ChatKey(promptMessage.getChatId(), promptMessage.getMessageId()),
+                new ChatKey(cb.getMessage().getChatId(), cb.getMessage().getMessageId()),
+                uuid);
         }
 
         safeExecute(AnswerCallbackQuery.builder()
@@ -725,11 +733,10 @@ public class ShopBot extends TelegramLongPollingBot {
 
         Message promptMessage = safeExecuteMessage(prompt);
         if (promptMessage != null) {
-            pendingRejections.put(promptMessage.getMessageId(), new PendingRejection(
-                uuid,
-                cb.getMessage().getChatId(),
-                cb.getMessage().getMessageId()
-            ));
+            links.put(MessageLink.Kind.PENDING_REJECTION,
+                new ChatKey(promptMessage.getChatId(), promptMessage.getMessageId()),
+                new ChatKey(cb.getMessage().getChatId(), cb.getMessage().getMessageId()),
+                uuid);
         }
 
         safeExecute(AnswerCallbackQuery.builder()
@@ -747,7 +754,10 @@ public class ShopBot extends TelegramLongPollingBot {
             return false;
         }
 
-        PendingShipment pending = pendingShipments.remove(message.getReplyToMessage().getMessageId());
+        ChatKey promptKey = new ChatKey(message.getChatId(), message.getReplyToMessage().getMessageId());
+        PendingShipment pending = links.take(MessageLink.Kind.PENDING_SHIPMENT, promptKey)
+            .map(link -> new PendingShipment(link.orderId(), link.target().chatId(), link.target().messageId()))
+            .orElse(null);
         if (pending == null) {
             return false;
         }
@@ -806,7 +816,10 @@ public class ShopBot extends TelegramLongPollingBot {
             return false;
         }
 
-        PendingRejection pending = pendingRejections.remove(message.getReplyToMessage().getMessageId());
+        ChatKey promptKey = new ChatKey(message.getChatId(), message.getReplyToMessage().getMessageId());
+        PendingRejection pending = links.take(MessageLink.Kind.PENDING_REJECTION, promptKey)
+            .map(link -> new PendingRejection(link.orderId(), link.target().chatId(), link.target().messageId()))
+            .orElse(null);
         if (pending == null) {
             return false;
         }
@@ -943,61 +956,62 @@ public class ShopBot extends TelegramLongPollingBot {
     }
 
     public void safeExecute(SendMessage msg) {
-        try {
-            execute(msg);
-        } catch (Exception e) {
-            log.error("🤖 TG Failed to send message", e);
-        }
+        submit(msg.getChatId(), () -> execute(msg)).whenComplete((response, e) -> {
+            if (e != null) {
+                log.error("🤖 TG Failed to send message", e);
+            }
+        });
     }
 
     public void safeExecute(AnswerCallbackQuery msg) {
-        try {
-            execute(msg);
-        } catch (Exception e) {
-            log.error("🤖 TG Failed to answer callback query", e);
-        }
+        submit(null, () -> execute(msg)).whenComplete((response, e) -> {
+            if (e != null) {
+                log.error("🤖 TG Failed to answer callback query", e);
+            }
+        });
     }
 
     public void safeExecute(EditMessageText msg) {
-        try {
-            execute(msg);
-        } catch (Exception e) {
-            log.error("🤖 TG Failed to edit message text", e);
-        }
+        submit(msg.getChatId(), () -> execute(msg)).whenComplete((response, e) -> {
+            if (e != null) {
+                log.error("🤖 TG Failed to edit message text", e);
+            }
+        });
     }
 
     public void safeExecute(EditMessageCaption msg) {
-        try {
-            execute(msg);
-        } catch (Exception e) {
-            log.error("🤖 TG Failed to edit message caption", e);
-        }
+        submit(msg.getChatId(), () -> execute(msg)).whenComplete((response, e) -> {
+            if (e != null) {
+                log.error("🤖 TG Failed to edit message caption", e);
+            }
+        });
     }
 
     public void safeExecute(EditMessageReplyMarkup msg) {
-        try {
-            execute(msg);
-        } catch (Exception e) {
+        submit(msg.getChatId(), () -> execute(msg)).whenComplete((response, e) -> {
+            if (e == null) {
+                return;
+            }
             String errorMessage = e.getMessage();
             if (errorMessage != null && errorMessage.contains("message is not modified")) {
                 log.debug("🤖 TG Skipping reply markup update: message not modified");
                 return;
             }
             log.error("🤖 TG Failed to edit message reply markup", e);
-        }
+        });
     }
 
     public void safeExecute(DeleteMessage msg) {
-        try {
-            execute(msg);
-        } catch (Exception e) {
-            log.error("🤖 TG Failed to delete message", e);
-        }
+        submit(msg.getChatId(), () -> execute(msg)).whenComplete((response, e) -> {
+            if (e != null) {
+                log.error("🤖 TG Failed to delete message", e);
+            }
+        });
     }
 
     public Message safeExecuteMessage(SendMessage msg) {
         try {
-            return execute(msg);
+            return send(msg.getChatId(), () -> execute(msg));
         } catch (Exception e) {
             log.error("🤖 TG Failed to send message", e);
             return null;
@@ -1006,7 +1020,7 @@ public class ShopBot extends TelegramLongPollingBot {
 
     public Message safeExecute(SendPhoto msg) {
         try {
-            return execute(msg);
+            return send(msg.getChatId(), () -> execute(msg));
         } catch (Exception e) {
             log.error("🤖 TG Failed to send photo", e);
             return null;
@@ -1015,7 +1029,7 @@ public class ShopBot extends TelegramLongPollingBot {
 
     public Message safeExecute(SendDocument msg) {
         try {
-            return execute(msg);
+            return send(msg.getChatId(), () -> execute(msg));
         } catch (Exception e) {
             log.error("🤖 TG Failed to send document", e);
             return null;
@@ -1024,7 +1038,7 @@ public class ShopBot extends TelegramLongPollingBot {
 
     public Message safeExecute(SendVideo msg) {
         try {
-            return execute(msg);
+            return send(msg.getChatId(), () -> execute(msg));
         } catch (Exception e) {
             log.error("🤖 TG Failed to send video", e);
             return null;
@@ -1033,7 +1047,7 @@ public class ShopBot extends TelegramLongPollingBot {
 
     public Message safeExecute(SendAudio msg) {
         try {
-            return execute(msg);
+            return send(msg.getChatId(), () -> execute(msg));
         } catch (Exception e) {
             log.error("🤖 TG Failed to send audio", e);
             return null;
@@ -1042,7 +1056,7 @@ public class ShopBot extends TelegramLongPollingBot {
 
     public Message safeExecute(SendVoice msg) {
         try {
-            return execute(msg);
+            return send(msg.getChatId(), () -> execute(msg));
         } catch (Exception e) {
             log.error("🤖 TG Failed to send voice", e);
             return null;
@@ -1051,7 +1065,7 @@ public class ShopBot extends TelegramLongPollingBot {
 
     public Message safeExecute(SendAnimation msg) {
         try {
-            return execute(msg);
+            return send(msg.getChatId(), () -> execute(msg));
         } catch (Exception e) {
             log.error("🤖 TG Failed to send animation", e);
             return null;
@@ -1060,7 +1074,7 @@ public class ShopBot extends TelegramLongPollingBot {
 
     public Message safeExecute(SendSticker msg) {
         try {
-            return execute(msg);
+            return send(msg.getChatId(), () -> execute(msg));
         } catch (Exception e) {
             log.error("🤖 TG Failed to send sticker", e);
             return null;
@@ -1069,7 +1083,7 @@ public class ShopBot extends TelegramLongPollingBot {
 
     public Message safeExecute(SendVideoNote msg) {
         try {
-            return execute(msg);
+            return send(msg.getChatId(), () -> execute(msg));
         } catch (Exception e) {
             log.error("🤖 TG Failed to send video note", e);
             return null;
@@ -1078,7 +1092,7 @@ public class ShopBot extends TelegramLongPollingBot {
 
     public Message safeExecute(SendContact msg) {
         try {
-            return execute(msg);
+            return send(msg.getChatId(), () -> execute(msg));
         } catch (Exception e) {
             log.error("🤖 TG Failed to send contact", e);
             return null;
@@ -1087,7 +1101,7 @@ public class ShopBot extends TelegramLongPollingBot {
 
     public Message safeExecute(SendLocation msg) {
         try {
-            return execute(msg);
+            return send(msg.getChatId(), () -> execute(msg));
         } catch (Exception e) {
             log.error("🤖 TG Failed to send location", e);
             return null;
@@ -1098,7 +1112,7 @@ public class ShopBot extends TelegramLongPollingBot {
         org.telegram.telegrambots.meta.api.methods.forum.CreateForumTopic msg
     ) {
         try {
-            return execute(msg);
+            return send(msg.getChatId(), () -> execute(msg));
         } catch (Exception e) {
             String errorMessage = e.getMessage();
             if (errorMessage != null && errorMessage.contains("chat is not a forum")) {
@@ -1110,6 +1124,18 @@ public class ShopBot extends TelegramLongPollingBot {
         }
     }
 
+    /**
+     * Все вызовы Bot API идут через общую очередь с лимитами; сообщения в админ-чаты уходят вне очереди
+     * пользовательских ответов.
+     */
+    private <T> CompletableFuture<T> submit(String chatId, TelegramSendQueue.ApiCall<T> call) {
+        return sendQueue.submit(chatId, sendQueue.priorityFor(chatId, TelegramSendQueue.Priority.INTERACTIVE), call);
+    }
+
+    private <T> T send(String chatId, TelegramSendQueue.ApiCall<T> call) throws TelegramApiException {
+        return sendQueue.call(chatId, sendQueue.priorityFor(chatId, TelegramSendQueue.Priority.INTERACTIVE), call);
+    }
+
     private static String escapeHtml(String s) {
       if (s == null) return "";
       return s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
@@ -1123,5 +1149,4 @@ public class ShopBot extends TelegramLongPollingBot {
 
     private record PendingShipment(UUID orderId, long chatId, int orderMessageId) {}
     private record PendingRejection(UUID orderId, long chatId, int orderMessageId) {}
-    private record ChatKey(long chatId, int messageId) {}
 }
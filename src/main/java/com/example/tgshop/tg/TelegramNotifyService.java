@@ -17,6 +17,7 @@ import org.telegram.telegrambots.meta.api.objects.Message;
 import org.telegram.telegrambots.meta.api.objects.forum.ForumTopic;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
 @Service
 @Slf4j
@@ -45,7 +46,7 @@ public class TelegramNotifyService {
     }
 
     /** Админу: новый заказ + кнопки approve/reject */
-    public void notifyNewOrder(OrderEntity order) {
+    public void notifyNewOrder(OrderEntity order) throws TelegramApiException {
         String chatId = getAdminChatId();
         if (chatId == null || chatId.isBlank()) {
             log.warn("🤖 TG Skipping admin notification: admin chat id not configured");
@@ -91,11 +92,11 @@ public class TelegramNotifyService {
                 .build();
 
         log.info("🤖 TG Sending admin notification for order uuid={} chatId={}", order.uuid(), chatId);
-        sender.safeExecute(msg);
+        sender.execute(msg);
     }
 
     /** Пользователю: сразу после оформления */
-    public void notifyUserOrderPlaced(OrderEntity order) {
+    public void notifyUserOrderPlaced(OrderEntity order) throws TelegramApiException {
         if (order.getTgUserId() <= 0) {
             log.warn("🤖 TG Skipping user notification: missing tg user id for order uuid={}", order.uuid());
             return;
@@ -116,11 +117,11 @@ public class TelegramNotifyService {
                 .build();
 
         log.info("🤖 TG Sending user order placed notification uuid={} tgUserId={}", order.uuid(), order.getTgUserId());
-        sender.safeExecute(msg);
+        sender.execute(msg);
     }
 
     /** Пользователю: когда админ одобрил/отклонил */
-    public void notifyUserOrderStatus(OrderEntity order, OrderDecision decision) {
+    public void notifyUserOrderStatus(OrderEntity order, OrderDecision decision) throws TelegramApiException {
         if (order.getTgUserId() <= 0) {
             log.warn("🤖 TG Skipping user status notification: missing tg user id for order uuid={}", order.uuid());
             return;
@@ -148,11 +149,11 @@ public class TelegramNotifyService {
 
         log.info("🤖 TG Sending user order status notification uuid={} decision={} tgUserId={}",
                 order.uuid(), decision, order.getTgUserId());
-        sender.safeExecute(msg);
+        sender.execute(msg);
     }
 
     /** Пользователю: когда админ отклонил с причиной */
-    public void notifyUserOrderRejected(OrderEntity order, String reason) {
+    public void notifyUserOrderRejected(OrderEntity order, String reason) throws TelegramApiException {
         if (order.getTgUserId() <= 0) {
             log.warn("🤖 TG Skipping user rejected notification: missing tg user id for order uuid={}", order.uuid());
             return;
@@ -173,10 +174,10 @@ public class TelegramNotifyService {
             .build();
 
         log.info("🤖 TG Sending user rejected notification uuid={} tgUserId={}", order.uuid(), order.getTgUserId());
-        sender.safeExecute(msg);
+        sender.execute(msg);
     }
     /** Пользователю: когда заказ отправлен */
-    public void notifyUserOrderShipped(OrderEntity order) {
+    public void notifyUserOrderShipped(OrderEntity order) throws TelegramApiException {
         if (order.getTgUserId() <= 0) {
             log.warn("🤖 TG Skipping user shipped notification: missing tg user id for order uuid={}", order.uuid());
             return;
@@ -199,7 +200,7 @@ public class TelegramNotifyService {
 
         log.info("🤖 TG Sending user order shipped notification uuid={} tgUserId={}",
                 order.uuid(), order.getTgUserId());
-        sender.safeExecute(msg);
+        sender.execute(msg);
     }
 
     public Message notifyUserPaymentRequest(OrderEntity order) {
@@ -317,7 +318,7 @@ public class TelegramNotifyService {
             if (sent != null) {
                 order.setAdminThreadMessageId(sent.getMessageId());
             }
-            orderRepository.save(order);
+            orderRepository.updateAdminThread(order.getId(), chatId, threadId, order.getAdminThreadMessageId());
 
             String link = buildTopicLink(chatId, threadId);
             return new OrderChatInfo(threadId, link);
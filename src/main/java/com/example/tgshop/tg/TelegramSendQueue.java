@@ -0,0 +1,358 @@
+package com.example.tgshop.tg;
+
+import com.example.tgshop.config.AppProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+/**
+ * Единая очередь исходящих вызовов Bot API.
+ *
+ * Перед отправкой берётся токен из глобального бакета и из бакета чата; в один чат одновременно
+ * летит не больше одного запроса, так что порядок сообщений внутри чата сохраняется.
+ * На 429 чат ставится на паузу ровно на retry_after, а запрос возвращается в очередь чата
+ * на своё прежнее место.
+ * Из готовых к отправке первыми уходят запросы с более высоким {@link Priority}.
+ *
+ * Метрики: tg.send.queue.depth, tg.send.latency{priority}, tg.send.throttled, tg.send.failed.
+ */
+@Component
+@Slf4j
+public class TelegramSendQueue {
+
+    public enum Priority {
+        /** Уведомления в админ-чат и админам. */
+        ADMIN,
+        /** Ответы на действия пользователя: колбэки, правки, переписка по заказу. */
+        INTERACTIVE,
+        /** Массовые уведомления пользователям. */
+        BULK
+    }
+
+    @FunctionalInterface
+    public interface ApiCall<T> {
+        T call() throws TelegramApiException;
+    }
+
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final Comparator<Task<?>> ORDER =
+        Comparator.<Task<?>, Priority>comparing(t -> t.priority).thenComparingLong(t -> t.seq);
+
+    private final AppProperties.Telegram config;
+    private final TokenBucket global;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final PriorityQueue<Task<?>> ready = new PriorityQueue<>(ORDER);
+    private final Map<String, ChatLane> lanes = new HashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger depth = new AtomicInteger();
+    private final ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor();
+    private final ScheduledExecutorService timers = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "tg-send-timer");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Thread dispatcher;
+    private volatile boolean stopped;
+
+    private final Map<Priority, Timer> latency = new EnumMap<>(Priority.class);
+    private final Counter throttled;
+    private final Counter failed;
+
+    public TelegramSendQueue(AppProperties props, MeterRegistry meterRegistry) {
+        this.config = props.getTelegram();
+        this.global = new TokenBucket(config.getSendGlobalPerSecond(), config.getSendGlobalPerSecond());
+        for (Priority priority : Priority.values()) {
+            latency.put(priority, Timer.builder("tg.send.latency")
+                .description("Time from enqueue to Bot API response")
+                .tag("priority", priority.name().toLowerCase())
+                .register(meterRegistry));
+        }
+        Gauge.builder("tg.send.queue.depth", depth, AtomicInteger::get)
+            .description("Bot API calls waiting to be sent")
+            .register(meterRegistry);
+        this.throttled = Counter.builder("tg.send.throttled")
+            .description("Bot API calls rejected with 429 and retried after retry_after")
+            .register(meterRegistry);
+        this.failed = Counter.builder("tg.send.failed")
+            .description("Bot API calls that failed permanently")
+            .register(meterRegistry);
+        this.dispatcher = Thread.ofPlatform().name("tg-send").daemon().start(this::dispatchLoop);
+    }
+
+    /** Ставит вызов в очередь; {@code chatId} может быть null для методов без чата (answerCallbackQuery). */
+    public <T> CompletableFuture<T> submit(String chatId, Priority priority, ApiCall<T> call) {
+        var task = new Task<>(chatId, priority, call, sequence.incrementAndGet());
+        depth.incrementAndGet();
+        lock.lock();
+        try {
+            enqueue(task);
+        } finally {
+            lock.unlock();
+        }
+        return task.result;
+    }
+
+    /** Синхронный вариант для вызывающих, которым нужен ответ Bot API (например, id отправленного сообщения). */
+    public <T> T call(String chatId, Priority priority, ApiCall<T> call) throws TelegramApiException {
+        try {
+            return submit(chatId, priority, call).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TelegramApiException("Interrupted while waiting for Telegram send", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TelegramApiException api) {
+                throw api;
+            }
+            throw new TelegramApiException(e.getCause());
+        }
+    }
+
+    /** Админ-чаты — группы (отрицательный id) и личные чаты админов; остальное получает {@code fallback}. */
+    public Priority priorityFor(String chatId, Priority fallback) {
+        if (chatId == null || chatId.isBlank()) {
+            return fallback;
+        }
+        try {
+            long id = Long.parseLong(chatId.trim());
+            return id < 0 || config.adminUserIdSet().contains(id) ? Priority.ADMIN : fallback;
+        } catch (NumberFormatException e) {
+            // @channelusername
+            return fallback;
+        }
+    }
+
+    private void enqueue(Task<?> task) {
+        ChatLane lane = task.chatId == null ? null : lanes.get(task.chatId);
+        if (lane != null && lane.busy) {
+            lane.waiting.add(task);
+        } else {
+            ready.add(task);
+            changed.signal();
+        }
+    }
+
+    private void dispatchLoop() {
+        while (!stopped) {
+            try {
+                lock.lock();
+                try {
+                    dispatchNext();
+                } finally {
+                    lock.unlock();
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                log.error("🤖 TG Send dispatcher failure", e);
+            }
+        }
+    }
+
+    private void dispatchNext() throws InterruptedException {
+        Task<?> task = ready.peek();
+        if (task == null) {
+            changed.await();
+            return;
+        }
+        long now = System.nanoTime();
+        long globalWait = global.waitNanos(now);
+        if (globalWait > 0) {
+            // пока ждём, может прийти более приоритетный запрос — после пробуждения берём голову заново
+            changed.awaitNanos(globalWait);
+            return;
+        }
+        ready.poll();
+
+        ChatLane lane = null;
+        if (task.chatId != null) {
+            lane = lanes.computeIfAbsent(task.chatId, id -> new ChatLane(id,
+                new TokenBucket(config.getSendPerChatPerSecond(), config.getSendPerChatBurst())));
+            if (lane.busy) {
+                lane.waiting.add(task);
+                return;
+            }
+            long chatWait = lane.bucket.waitNanos(now);
+            if (chatWait > 0) {
+                park(lane, task, chatWait);
+                return;
+            }
+            lane.bucket.take(now);
+            lane.busy = true;
+        }
+        global.take(now);
+        ChatLane sendingLane = lane;
+        workers.execute(() -> send(task, sendingLane));
+    }
+
+    private <T> void send(Task<T> task, ChatLane lane) {
+        try {
+            T response = task.call.call();
+            finish(task);
+            task.result.complete(response);
+            release(lane);
+        } catch (TelegramApiRequestException e) {
+            Integer retryAfter = e.getParameters() != null ? e.getParameters().getRetryAfter() : null;
+            if (e.getErrorCode() != null && e.getErrorCode() == TOO_MANY_REQUESTS
+                && ++task.attempts <= config.getSendMaxRetries()) {
+                long seconds = retryAfter != null ? retryAfter : 1;
+                throttled.increment();
+                log.warn("🤖 TG Rate limited chatId={} retryAfter={}s attempt={}", task.chatId, seconds, task.attempts);
+                lock.lock();
+                try {
+                    if (lane != null) {
+                        park(lane, task, TimeUnit.SECONDS.toNanos(seconds));
+                    } else {
+                        timers.schedule(() -> requeue(task), seconds, TimeUnit.SECONDS);
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                return;
+            }
+            fail(task, lane, e);
+        } catch (Exception e) {
+            fail(task, lane, e);
+        }
+    }
+
+    private void fail(Task<?> task, ChatLane lane, Exception e) {
+        failed.increment();
+        finish(task);
+        task.result.completeExceptionally(e);
+        release(lane);
+    }
+
+    private void finish(Task<?> task) {
+        depth.decrementAndGet();
+        latency.get(task.priority).record(System.nanoTime() - task.enqueuedAt, TimeUnit.NANOSECONDS);
+    }
+
+    /** Задача возвращается в очередь чата, а сам чат не участвует в отправке до истечения паузы. */
+    private void park(ChatLane lane, Task<?> task, long nanos) {
+        lane.busy = true;
+        lane.waiting.add(task);
+        timers.schedule(() -> release(lane), nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void requeue(Task<?> task) {
+        lock.lock();
+        try {
+            enqueue(task);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(ChatLane lane) {
+        if (lane == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            lane.busy = false;
+            Task<?> next = lane.waiting.poll();
+            if (next != null) {
+                // остальные ждут в очереди чата и выйдут по одному после ответа на этот
+                ready.add(next);
+                changed.signal();
+            } else if (lane.bucket.isFull(System.nanoTime())) {
+                lanes.remove(lane.chatId, lane);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        stopped = true;
+        dispatcher.interrupt();
+        timers.shutdownNow();
+        workers.shutdown();
+    }
+
+    private static final class Task<T> {
+        final String chatId;
+        final Priority priority;
+        final ApiCall<T> call;
+        final long seq;
+        final long enqueuedAt = System.nanoTime();
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        int attempts;
+
+        Task(String chatId, Priority priority, ApiCall<T> call, long seq) {
+            this.chatId = chatId;
+            this.priority = priority;
+            this.call = call;
+            this.seq = seq;
+        }
+    }
+
+    private static final class ChatLane {
+        final String chatId;
+        final TokenBucket bucket;
+        final PriorityQueue<Task<?>> waiting = new PriorityQueue<>(ORDER);
+        boolean busy;
+
+        ChatLane(String chatId, TokenBucket bucket) {
+            this.chatId = chatId;
+            this.bucket = bucket;
+        }
+    }
+
+    /** Классический token bucket; вызывается только под {@code lock}. */
+    private static final class TokenBucket {
+        private final double capacity;
+        private final double nanosPerToken;
+        private double tokens;
+        private long refilledAt = System.nanoTime();
+
+        TokenBucket(double perSecond, double capacity) {
+            this.capacity = Math.max(1, capacity);
+            this.nanosPerToken = TimeUnit.SECONDS.toNanos(1) / Math.max(perSecond, 0.001);
+            this.tokens = this.capacity;
+        }
+
+        long waitNanos(long now) {
+            refill(now);
+            return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) * nanosPerToken);
+        }
+
+        void take(long now) {
+            refill(now);
+            tokens -= 1;
+        }
+
+        boolean isFull(long now) {
+            refill(now);
+            return tokens >= capacity;
+        }
+
+        private void refill(long now) {
+            tokens = Math.min(capacity, tokens + (now - refilledAt) / nanosPerToken);
+            refilledAt = now;
+        }
+    }
+}
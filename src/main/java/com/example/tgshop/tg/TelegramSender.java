@@ -7,15 +7,18 @@ import org.telegram.telegrambots.meta.api.methods.forum.CreateForumTopic;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.objects.Message;
 import org.telegram.telegrambots.meta.api.objects.forum.ForumTopic;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
 @Component
 @Slf4j
 public class TelegramSender {
 
     private final ShopBot bot;
+    private final TelegramSendQueue sendQueue;
 
-    public TelegramSender(@Lazy ShopBot bot) {
+    public TelegramSender(@Lazy ShopBot bot, TelegramSendQueue sendQueue) {
         this.bot = bot;
+        this.sendQueue = sendQueue;
     }
 
     public void safeExecute(SendMessage msg) {
@@ -28,6 +31,16 @@ public class TelegramSender {
         return bot.safeExecuteMessage(msg);
     }
 
+    /**
+     * Без перехвата ошибок: вызывающий (outbox) сам решает, повторять ли отправку.
+     * Уведомления пользователям идут с низшим приоритетом, админ-чату — с высшим.
+     */
+    public Message execute(SendMessage msg) throws TelegramApiException {
+        log.debug("🤖 TG Sending telegram message to chatId={}", msg.getChatId());
+        var priority = sendQueue.priorityFor(msg.getChatId(), TelegramSendQueue.Priority.BULK);
+        return sendQueue.call(msg.getChatId(), priority, () -> bot.execute(msg));
+    }
+
     public ForumTopic safeExecute(CreateForumTopic msg) {
         log.debug("🤖 TG Creating forum topic in chatId={}", msg.getChatId());
         return bot.safeExecute(msg);
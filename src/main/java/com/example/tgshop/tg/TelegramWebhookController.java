@@ -0,0 +1,68 @@
+package com.example.tgshop.tg;
+
+import com.example.tgshop.config.AppProperties;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+/**
+ * Приём апдейтов в режиме webhook (app.telegram.mode=webhook).
+ *
+ * Telegram присылает секрет из setWebhook в заголовке X-Telegram-Bot-Api-Secret-Token — без него запрос
+ * отклоняется. Дальше апдейт идёт тем же путём, что и при long polling: {@link ShopBot#onUpdateReceived}.
+ */
+@RestController
+@Slf4j
+public class TelegramWebhookController {
+
+    public static final String SECRET_HEADER = "X-Telegram-Bot-Api-Secret-Token";
+
+    /** Объекты telegrambots размечены аннотациями Jackson 2, поэтому и разбираем ими. */
+    private static final ObjectMapper UPDATE_MAPPER = new ObjectMapper()
+        .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final ShopBot bot;
+    private final AppProperties props;
+    private final byte[] secret;
+
+    public TelegramWebhookController(ShopBot bot, AppProperties props) {
+        this.bot = bot;
+        this.props = props;
+        this.secret = props.getTelegram().webhookSecret().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @PostMapping("${app.telegram.webhook-path:/api/telegram/webhook}")
+    public ResponseEntity<Void> receive(
+            @RequestHeader(value = SECRET_HEADER, required = false) String secretToken,
+            @RequestBody byte[] body
+    ) {
+        if (!props.getTelegram().isWebhookMode()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        if (secretToken == null
+            || !MessageDigest.isEqual(secret, secretToken.getBytes(StandardCharsets.UTF_8))) {
+            log.warn("🤖 TG Rejected webhook call with invalid secret token");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+
+        Update update;
+        try {
+            update = UPDATE_MAPPER.readValue(body, Update.class);
+        } catch (Exception e) {
+            // 200, чтобы Telegram не повторял заведомо битый апдейт
+            log.error("🤖 TG Failed to parse webhook update", e);
+            return ResponseEntity.ok().build();
+        }
+        bot.onUpdateReceived(update);
+        return ResponseEntity.ok().build();
+    }
+}
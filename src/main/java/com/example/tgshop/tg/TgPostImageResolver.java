@@ -1,5 +1,8 @@
 package com.example.tgshop.tg;
 
+import com.example.tgshop.config.AppProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
@@ -11,6 +14,10 @@ import java.net.URI;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -23,6 +30,15 @@ public class TgPostImageResolver {
             "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 " +
                     "(KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36";
 
+    private final Cache<PostRef, List<String>> postCache;
+
+    public TgPostImageResolver(AppProperties props) {
+        this.postCache = Caffeine.newBuilder()
+                .expireAfterWrite(props.getTelegram().getPostCacheTtl())
+                .maximumSize(props.getTelegram().getPostCacheMaxSize())
+                .build();
+    }
+
     public List<String> resolveImages(List<String> urls) {
         return resolvePostImages(urls);
     }
@@ -31,32 +47,60 @@ public class TgPostImageResolver {
         if (urls == null || urls.isEmpty()) return List.of();
 
         log.info("🖼️ TG Resolving image urls count={}", urls.size());
-        LinkedHashSet<String> out = new LinkedHashSet<>();
-
-        for (String raw : urls) {
-            if (raw == null) continue;
-            String u = raw.trim();
-            if (u.isBlank()) continue;
+        List<Object> slots = new ArrayList<>();
+        Map<PostRef, Future<List<String>>> posts = new LinkedHashMap<>();
+
+        // посты резолвим параллельно, а порядок картинок собираем по исходному списку
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (String raw : urls) {
+                if (raw == null) continue;
+                String u = raw.trim();
+                if (u.isBlank()) continue;
+
+                if (looksLikeDirectImage(u)) {
+                    slots.add(normalizeUrl(u));
+                    continue;
+                }
 
-            if (looksLikeDirectImage(u)) {
-                out.add(normalizeUrl(u));
-                continue;
+                Optional<PostRef> ref = parsePostRef(u);
+                if (ref.isPresent()) {
+                    PostRef pr = ref.get();
+                    slots.add(pr);
+                    posts.computeIfAbsent(pr, key -> executor.submit(() -> resolvePostImages(key.channel(), key.postId())));
+                }
             }
 
-            Optional<PostRef> ref = parsePostRef(u);
-            if (ref.isPresent()) {
-                PostRef pr = ref.get();
-                log.debug("🖼️ TG Resolving telegram post images channel={} postId={}", pr.channel(), pr.postId());
-                List<String> imgs = resolvePostImages(pr.channel(), pr.postId());
-                out.addAll(imgs);
+            LinkedHashSet<String> out = new LinkedHashSet<>();
+            for (Object slot : slots) {
+                if (slot instanceof PostRef pr) {
+                    out.addAll(await(posts.get(pr)));
+                } else {
+                    out.add((String) slot);
+                }
             }
-        }
 
-        log.debug("🖼️ TG Resolved {} unique image urls", out.size());
-        return new ArrayList<>(out);
+            log.debug("🖼️ TG Resolved {} unique image urls", out.size());
+            return new ArrayList<>(out);
+        }
     }
 
+    /**
+     * Картинки поста из кэша; одновременные запросы одного поста ждут единственную загрузку.
+     * Ошибки и пустой результат (сбой t.me, не распарсили страницу) не кэшируются — повтор сходит заново.
+     */
     public List<String> resolvePostImages(String channel, long postId) {
+        var key = new PostRef(channel, postId);
+        List<String> images = postCache.get(key, ref -> {
+            log.debug("🖼️ TG Resolving telegram post images channel={} postId={}", ref.channel(), ref.postId());
+            return List.copyOf(fetchPostImages(ref.channel(), ref.postId()));
+        });
+        if (images.isEmpty()) {
+            postCache.asMap().remove(key, images);
+        }
+        return images;
+    }
+
+    private List<String> fetchPostImages(String channel, long postId) {
         String dataPost = channel + "/" + postId;
         String url = "https://t.me/s/" + channel + "/" + postId + "?single";
 
@@ -94,6 +138,18 @@ public class TgPostImageResolver {
 
     // -------------------- helpers --------------------
 
+    private static List<String> await(Future<List<String>> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while resolving telegram post", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
     private Document fetch(String url) {
         try {
             return Jsoup.connect(url)
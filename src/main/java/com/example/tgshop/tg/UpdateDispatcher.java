@@ -0,0 +1,148 @@
+package com.example.tgshop.tg;
+
+import com.example.tgshop.config.AppProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+/**
+ * Раздаёт апдейты бота по виртуальным потокам.
+ *
+ * Апдейты одного чата выстраиваются в цепочку и обрабатываются строго по порядку, разные чаты —
+ * параллельно. Число апдейтов в работе ограничено: при переполнении поток long polling ждёт,
+ * и новые апдейты не забираются у Telegram, пока не освободится место.
+ *
+ * Метрики: tg.updates.in_flight, tg.updates.chats, tg.updates.wait, tg.updates.handle.
+ */
+@Component
+@Slf4j
+public class UpdateDispatcher {
+
+    private final Semaphore permits;
+    private final Map<Long, CompletableFuture<Void>> lanes = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final int maxInFlight;
+    private final Timer waitTimer;
+    private final Timer handleTimer;
+
+    public UpdateDispatcher(AppProperties props, MeterRegistry meterRegistry) {
+        this.maxInFlight = Math.max(1, props.getTelegram().getUpdateMaxInFlight());
+        this.permits = new Semaphore(maxInFlight);
+        Gauge.builder("tg.updates.in_flight", permits, p -> maxInFlight - p.availablePermits())
+            .description("Updates accepted but not yet handled")
+            .register(meterRegistry);
+        Gauge.builder("tg.updates.chats", lanes, Map::size)
+            .description("Chats with updates in progress")
+            .register(meterRegistry);
+        this.waitTimer = Timer.builder("tg.updates.wait")
+            .description("Time an update waits behind earlier updates of the same chat")
+            .register(meterRegistry);
+        this.handleTimer = Timer.builder("tg.updates.handle")
+            .description("Time spent handling an update")
+            .register(meterRegistry);
+    }
+
+    public void dispatch(Update update, Consumer<Update> handler) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("🤖 TG Interrupted while waiting for update slot, dropping update id={}", update.getUpdateId());
+            return;
+        }
+
+        long accepted = System.nanoTime();
+        Runnable task = () -> {
+            long started = System.nanoTime();
+            waitTimer.record(started - accepted, TimeUnit.NANOSECONDS);
+            try {
+                handler.accept(update);
+            } catch (Throwable e) {
+                log.error("🤖 TG Failed to handle update id={}", update.getUpdateId(), e);
+            } finally {
+                handleTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+                permits.release();
+            }
+        };
+
+        Long chatId = chatIdOf(update);
+        if (chatId == null) {
+            runDetached(task);
+            return;
+        }
+        // хвост цепочки чата подменяется атомарно; завершившийся хвост убирает себя сам.
+        // handle() гасит ошибку предыдущего звена — иначе все следующие апдейты чата были бы пропущены
+        // вместе со своим finally, и разрешения семафора утекали бы
+        CompletableFuture<Void> tail;
+        try {
+            tail = lanes.compute(chatId, (id, previous) -> previous == null
+                ? CompletableFuture.runAsync(task, executor)
+                : previous.handle((ignored, e) -> null).thenRunAsync(task, executor));
+        } catch (RejectedExecutionException e) {
+            log.warn("🤖 TG Update id={} rejected, executor is shutting down", update.getUpdateId());
+            permits.release();
+            return;
+        }
+        tail.whenComplete((ignored, e) -> {
+            lanes.remove(chatId, tail);
+            if (e != null) {
+                // задачу так и не запустили (пул отклонил её при остановке) — разрешение возвращаем здесь
+                log.warn("🤖 TG Update id={} was not handled", update.getUpdateId(), e);
+                permits.release();
+            }
+        });
+    }
+
+    private void runDetached(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            log.warn("🤖 TG Update rejected, executor is shutting down");
+            permits.release();
+        }
+    }
+
+    /** Чат, к которому относится апдейт; для inline-колбэков без сообщения — пользователь. */
+    private static Long chatIdOf(Update update) {
+        if (update.hasMessage()) {
+            return update.getMessage().getChatId();
+        }
+        if (update.hasEditedMessage()) {
+            return update.getEditedMessage().getChatId();
+        }
+        if (update.hasCallbackQuery()) {
+            var callback = update.getCallbackQuery();
+            if (callback.getMessage() != null) {
+                return callback.getMessage().getChatId();
+            }
+            return callback.getFrom() != null ? callback.getFrom().getId() : null;
+        }
+        return null;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+        }
+    }
+}
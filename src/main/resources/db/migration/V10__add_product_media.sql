@@ -0,0 +1,13 @@
+-- Ссылки товар → файл: один и тот же контент (имя = sha256) может использоваться несколькими товарами.
+CREATE TABLE product_media (
+  id BIGINT PRIMARY KEY AUTO_INCREMENT,
+  product_id BINARY(16) NOT NULL,
+  filename VARCHAR(255) NOT NULL,
+  UNIQUE KEY ux_product_media_product_filename (product_id, filename),
+  KEY ix_product_media_filename (filename)
+);
+
+INSERT INTO product_media (product_id, filename)
+SELECT product_id, filename
+FROM media_images
+WHERE original_filename IS NULL;
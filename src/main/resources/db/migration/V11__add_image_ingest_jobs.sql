@@ -0,0 +1,14 @@
+CREATE TABLE image_ingest_jobs (
+  id BIGINT PRIMARY KEY AUTO_INCREMENT,
+  product_id BINARY(16) NOT NULL,
+  source_urls TEXT NOT NULL,
+  replace_existing BOOLEAN NOT NULL,
+  status VARCHAR(16) NOT NULL,
+  attempts INT NOT NULL DEFAULT 0,
+  next_attempt_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  last_error VARCHAR(1000) NULL,
+  created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  KEY ix_image_ingest_jobs_status_next (status, next_attempt_at),
+  KEY ix_image_ingest_jobs_product (product_id)
+);
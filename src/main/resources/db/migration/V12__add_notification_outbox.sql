@@ -0,0 +1,15 @@
+CREATE TABLE notification_outbox (
+  id BIGINT PRIMARY KEY AUTO_INCREMENT,
+  order_id BINARY(16) NOT NULL,
+  kind VARCHAR(32) NOT NULL,
+  reason VARCHAR(1000) NULL,
+  status VARCHAR(16) NOT NULL,
+  attempts INT NOT NULL DEFAULT 0,
+  next_attempt_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  last_error VARCHAR(1000) NULL,
+  created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  KEY ix_notification_outbox_status_next (status, next_attempt_at),
+  -- условие порядка в findDueIds: есть ли у заказа более раннее незавершённое уведомление
+  KEY ix_notification_outbox_order (order_id, status, id)
+);
@@ -0,0 +1,12 @@
+CREATE TABLE tg_message_links (
+  id BIGINT PRIMARY KEY AUTO_INCREMENT,
+  kind VARCHAR(24) NOT NULL,
+  chat_id BIGINT NOT NULL,
+  message_id INT NOT NULL,
+  target_chat_id BIGINT NULL,
+  target_message_id INT NULL,
+  order_id BINARY(16) NULL,
+  expires_at TIMESTAMP NOT NULL,
+  UNIQUE KEY ux_tg_message_links_source (kind, chat_id, message_id),
+  KEY ix_tg_message_links_expires (expires_at)
+);
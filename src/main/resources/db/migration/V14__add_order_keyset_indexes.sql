@@ -0,0 +1,4 @@
+-- keyset-пагинация админки: ORDER BY created_at DESC, id DESC с фильтрами по статусу и пользователю
+CREATE INDEX ix_orders_created ON orders (created_at, id);
+CREATE INDEX ix_orders_status_created ON orders (status, created_at, id);
+CREATE INDEX ix_orders_user_created ON orders (tg_user_id, created_at, id);
@@ -0,0 +1,10 @@
+CREATE TABLE product_sales (
+  product_id BINARY(16) PRIMARY KEY,
+  sold BIGINT NOT NULL DEFAULT 0
+);
+
+-- Продажи считаются по всем заказам, как и до появления product_sales: отклонённые тоже входят.
+INSERT INTO product_sales (product_id, sold)
+SELECT i.product_id, SUM(i.quantity)
+FROM order_items i
+GROUP BY i.product_id;
@@ -0,0 +1,16 @@
+-- media_images раньше создавалась hibernate ddl-auto; фиксируем её исходную схему,
+-- чтобы миграция одинаково отрабатывала и на старой, и на пустой базе.
+CREATE TABLE IF NOT EXISTS media_images (
+  id BIGINT PRIMARY KEY AUTO_INCREMENT,
+  product_id BINARY(16) NOT NULL,
+  filename VARCHAR(255) NOT NULL UNIQUE,
+  content_type VARCHAR(128) NOT NULL,
+  data LONGBLOB NOT NULL
+);
+
+ALTER TABLE media_images
+  MODIFY COLUMN data LONGBLOB NULL,
+  ADD COLUMN size_bytes BIGINT NULL,
+  ADD COLUMN created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP;
+
+UPDATE media_images SET size_bytes = LENGTH(data) WHERE data IS NOT NULL;
@@ -0,0 +1,5 @@
+ALTER TABLE media_images
+  ADD COLUMN original_filename VARCHAR(255) NULL,
+  ADD COLUMN width INT NULL;
+
+CREATE INDEX ix_media_images_original_width ON media_images(original_filename, width);
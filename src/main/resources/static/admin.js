@@ -1,13 +1,24 @@
 const state = {
     products: [],
+    productsPage: 0,
+    productsTotal: 0,
+    productsHasMore: false,
     orders: [],
+    ordersCursor: null,
+    ordersTotal: 0,
+    ordersRevenue: 0,
     archivedProducts: [],
+    archivedPage: 0,
+    archivedTotal: 0,
+    archivedHasMore: false,
     tags: [],
     promoCodes: [],
+    imageJobs: new Map(),
+    imageJobsTimer: null,
     paymentTemplate: "",
     viewAsCustomer: false,
     activeTab: "catalog",
-    password: sessionStorage.getItem("tgshop_admin_password") || "",
+    token: sessionStorage.getItem("tgshop_admin_token") || "",
 };
 
 function qs(id) {
@@ -32,7 +43,7 @@ function apiHeaders(extra = {}) {
         "ngrok-skip-browser-warning": "true",
         ...extra,
     };
-    if (state.password) headers["X-Admin-Password"] = state.password;
+    if (state.token) headers["X-Admin-Token"] = state.token;
     return headers;
 }
 
@@ -110,13 +121,49 @@ function formatDate(iso) {
 
 function handleAdminError(err, fallback = "Ошибка") {
     const msg = String(err?.message || "").trim();
-    if (msg.includes("Not admin") || msg.includes("Bad initData") || msg.includes("Bad password")) {
+    if (msg.includes("Bad token") && telegramInitData()) {
+        // токен истёк — внутри Telegram молча получаем новый по initData
+        state.token = "";
+        sessionStorage.removeItem("tgshop_admin_token");
+        loginWithInitData().then((ok) => {
+            if (ok) setActiveTab(state.activeTab);
+        });
+        return;
+    }
+    if (msg.includes("Not admin") || msg.includes("Bad initData") || msg.includes("Bad password")
+        || msg.includes("Bad token") || msg.includes('"status":401')) {
         showLogin(true);
         return;
     }
     alert(msg || fallback);
 }
 
+/** initData, если админка открыта из Telegram (или передана в ?initData= для отладки). */
+function telegramInitData() {
+    const tg = window.Telegram?.WebApp;
+    if (tg && tg.initData) return tg.initData;
+    return new URL(window.location.href).searchParams.get("initData") || "";
+}
+
+function saveSession(session) {
+    state.token = session.token;
+    sessionStorage.setItem("tgshop_admin_token", session.token);
+}
+
+/** Меняет initData на тот же короткоживущий токен, что и вход по паролю: дальше initData не проверяется. */
+async function loginWithInitData() {
+    const initData = telegramInitData();
+    if (!initData) return false;
+    try {
+        saveSession(await apiPost("/api/admin/login", {initData}));
+        showLogin(false);
+        return true;
+    } catch (err) {
+        console.error(err);
+        return false;
+    }
+}
+
 function showLogin(show) {
     qs("loginOverlay").classList.toggle("hidden", !show);
     if (show) {
@@ -133,9 +180,8 @@ async function handleLogin(e) {
     const password = String(fd.get("password") || "").trim();
     if (!password) return;
     try {
-        await apiPost("/api/admin/login", {password});
-        state.password = password;
-        sessionStorage.setItem("tgshop_admin_password", password);
+        // пароль дальше не храним: все запросы идут с короткоживущим токеном
+        saveSession(await apiPost("/api/admin/login", {password}));
         showLogin(false);
         setActiveTab(state.activeTab);
     } catch (err) {
@@ -145,8 +191,8 @@ async function handleLogin(e) {
 }
 
 function logout() {
-    state.password = "";
-    sessionStorage.removeItem("tgshop_admin_password");
+    state.token = "";
+    sessionStorage.removeItem("tgshop_admin_token");
     showLogin(true);
     qs("productGrid").innerHTML = "";
     qs("ordersBody").innerHTML = "";
@@ -159,12 +205,33 @@ function logout() {
     qs("promoMeta").textContent = "Промокоды магазина";
 }
 
-async function loadProducts() {
-    qs("catalogMeta").textContent = "Загрузка...";
+const PRODUCTS_PAGE_SIZE = 60;
+
+function productPageParams(page) {
+    const params = new URLSearchParams({page: String(page), size: String(PRODUCTS_PAGE_SIZE)});
+    const q = qs("productSearch").value.trim();
+    const tagId = qs("productTagFilter").value;
+    if (q) params.set("q", q);
+    if (tagId) params.set("tagId", tagId);
+    return params;
+}
+
+// Админский список приходит страницами, поиск и фильтр по тегу выполняет сервер
+async function loadProducts(more = false) {
+    if (!more) qs("catalogMeta").textContent = "Загрузка...";
     try {
-        state.products = state.viewAsCustomer
-            ? await apiGet("/api/products")
-            : await apiGet("/api/admin/products");
+        if (state.viewAsCustomer) {
+            state.products = await apiGet("/api/products");
+            state.productsTotal = state.products.length;
+            state.productsHasMore = false;
+        } else {
+            const page = await apiGet(`/api/admin/products?${productPageParams(more ? state.productsPage + 1 : 0)}`);
+            state.products = more ? state.products.concat(page.products) : page.products;
+            state.productsPage = page.page;
+            state.productsTotal = page.totalCount;
+            state.productsHasMore = page.hasMore;
+            await loadImageJobs();
+        }
         renderProducts();
     } catch (err) {
         console.error(err);
@@ -173,9 +240,89 @@ async function loadProducts() {
     }
 }
 
-async function loadOrders() {
+const IMAGE_JOBS_POLL_MS = 3000;
+
+// Фото товаров качаются в фоне: пока есть активные задачи, опрашиваем их статус
+async function loadImageJobs() {
+    try {
+        const jobs = await apiGet("/api/admin/image-jobs");
+        state.imageJobs = new Map(jobs.map((job) => [String(job.productId), job]));
+    } catch (err) {
+        console.error(err);
+        return;
+    }
+    if (state.imageJobsTimer) window.clearTimeout(state.imageJobsTimer);
+    state.imageJobsTimer = hasActiveImageJobs()
+        ? window.setTimeout(pollImageJobs, IMAGE_JOBS_POLL_MS)
+        : null;
+}
+
+function hasActiveImageJobs() {
+    for (const job of state.imageJobs.values()) {
+        if (job.status === "PENDING" || job.status === "RUNNING") return true;
+    }
+    return false;
+}
+
+async function pollImageJobs() {
+    const before = new Map([...state.imageJobs].map(([id, job]) => [id, job.status]));
+    await loadImageJobs();
+    const changed = [...before.keys()].some((id) => state.imageJobs.get(id)?.status !== before.get(id));
+    if (changed && state.activeTab === "catalog" && !state.viewAsCustomer) {
+        await refreshLoadedProducts();
+    }
+}
+
+// Перечитывает уже показанные страницы: догруженное через «Показать ещё» не сбрасывается
+async function refreshLoadedProducts() {
+    const requests = [];
+    for (let page = 0; page <= state.productsPage; page++) {
+        requests.push(apiGet(`/api/admin/products?${productPageParams(page)}`));
+    }
+    try {
+        const pages = await Promise.all(requests);
+        const seen = new Set();
+        // между запросами страницы могли сдвинуться — убираем повторы
+        state.products = pages.flatMap((page) => page.products).filter((p) => {
+            if (seen.has(p.id)) return false;
+            seen.add(p.id);
+            return true;
+        });
+        const last = pages[pages.length - 1];
+        state.productsTotal = last.totalCount;
+        state.productsHasMore = last.hasMore;
+        renderProducts();
+    } catch (err) {
+        console.error(err);
+    }
+}
+
+function imageJobTag(p) {
+    const job = state.imageJobs.get(String(p.id));
+    if (!job) return null;
+    if (job.status === "FAILED") {
+        return el("span", {class: "status-tag danger", title: job.lastError || ""}, [document.createTextNode("Фото не загрузились")]);
+    }
+    const text = job.attempts > 1 ? `Фото загружаются (попытка ${job.attempts})` : "Фото загружаются";
+    return el("span", {class: "status-tag", title: job.lastError || ""}, [document.createTextNode(text)]);
+}
+
+const ORDERS_PAGE_SIZE = 50;
+
+// Заказы приходят страницами по курсору; сводка считается сервером по всем заказам под фильтром
+async function loadOrders(more = false) {
+    const params = new URLSearchParams({limit: String(ORDERS_PAGE_SIZE)});
+    const status = qs("ordersStatus").value;
+    if (status) params.set("status", status);
+    if (more && state.ordersCursor) params.set("cursor", state.ordersCursor);
     try {
-        state.orders = await apiGet("/api/admin/orders");
+        const page = await apiGet(`/api/admin/orders?${params}`);
+        state.orders = more ? state.orders.concat(page.orders) : page.orders;
+        state.ordersCursor = page.nextCursor || null;
+        if (page.totalCount != null) {
+            state.ordersTotal = page.totalCount;
+            state.ordersRevenue = page.revenueMinor || 0;
+        }
         renderOrders();
     } catch (err) {
         console.error(err);
@@ -183,9 +330,17 @@ async function loadOrders() {
     }
 }
 
-async function loadArchived() {
+async function loadArchived(more = false) {
     try {
-        state.archivedProducts = await apiGet("/api/admin/products/archived");
+        const params = new URLSearchParams({
+            page: String(more ? state.archivedPage + 1 : 0),
+            size: String(PRODUCTS_PAGE_SIZE),
+        });
+        const page = await apiGet(`/api/admin/products/archived?${params}`);
+        state.archivedProducts = more ? state.archivedProducts.concat(page.products) : page.products;
+        state.archivedPage = page.page;
+        state.archivedTotal = page.totalCount;
+        state.archivedHasMore = page.hasMore;
         renderArchived();
     } catch (err) {
         console.error(err);
@@ -197,6 +352,7 @@ async function loadTags() {
     try {
         state.tags = await apiGet("/api/admin/tags");
         renderTags();
+        renderProductTagFilter();
         renderTagPicker(qs("productTagPicker"), new Set(getSelectedTagIds(qs("productTagPicker"))));
     } catch (err) {
         console.error(err);
@@ -482,10 +638,23 @@ function renderTagPills(tags) {
     return row;
 }
 
+function renderProductTagFilter() {
+    const select = qs("productTagFilter");
+    const selected = select.value;
+    select.innerHTML = "";
+    select.append(el("option", {value: ""}, [document.createTextNode("Все теги")]));
+    state.tags.forEach((tag) => {
+        select.append(el("option", {value: String(tag.id)}, [document.createTextNode(tag.name)]));
+    });
+    select.value = state.tags.some((tag) => String(tag.id) === selected) ? selected : "";
+}
+
 function renderProducts() {
     const grid = qs("productGrid");
     grid.innerHTML = "";
-    const total = state.products.length;
+    const total = state.productsTotal;
+    qs("productFilters").classList.toggle("hidden", state.viewAsCustomer);
+    qs("productsMore").classList.toggle("hidden", !state.productsHasMore);
     qs("catalogMeta").textContent = state.viewAsCustomer
         ? `Покупательский вид • ${total}`
         : `Всего товаров: ${total}`;
@@ -502,6 +671,8 @@ function renderProducts() {
                 ? el("span", {class: "status-tag"}, [document.createTextNode("Скрыт")])
                 : el("span", {class: "status-tag hidden"}, [])
         ]);
+        const jobTag = state.viewAsCustomer ? null : imageJobTag(p);
+        if (jobTag) title.append(jobTag);
         const tags = renderTagPills(p.tags);
         const meta = el("div", {class: "meta"}, [
             el("div", {}, [document.createTextNode(`Цена: ${money(p)}`)]),
@@ -553,15 +724,9 @@ function renderOrders() {
     const tbody = qs("ordersBody");
     tbody.innerHTML = "";
 
-    const totalOrders = state.orders.length;
-    let revenue = 0;
     let currency = "UAH";
-    const successStatuses = new Set(["APPROVED", "SHIPPED"]);
 
     for (const order of state.orders) {
-        if (successStatuses.has(order.status)) {
-            revenue += order.totalMinor || 0;
-        }
         currency = order.currency || currency;
         const itemsWrap = el("div", {class: "order-items"});
 
@@ -606,6 +771,10 @@ function renderOrders() {
                         try {
                             await apiDelete(`/api/admin/orders/${order.id}`);
                             state.orders = state.orders.filter((item) => item.id !== order.id);
+                            state.ordersTotal = Math.max(0, state.ordersTotal - 1);
+                            if (order.status === "APPROVED" || order.status === "SHIPPED") {
+                                state.ordersRevenue -= order.totalMinor || 0;
+                            }
                             renderOrders();
                         } catch (err) {
                             console.error(err);
@@ -618,16 +787,18 @@ function renderOrders() {
         tbody.append(row);
     }
 
-    qs("ordersCount").textContent = String(totalOrders);
-    qs("ordersRevenue").textContent = formatMoney(revenue, currency);
-    qs("ordersEmpty").classList.toggle("hidden", totalOrders > 0);
+    qs("ordersCount").textContent = String(state.ordersTotal);
+    qs("ordersRevenue").textContent = formatMoney(state.ordersRevenue, currency);
+    qs("ordersEmpty").classList.toggle("hidden", state.orders.length > 0);
+    qs("ordersMore").classList.toggle("hidden", !state.ordersCursor);
 }
 
 function renderArchived() {
     const grid = qs("archiveGrid");
     grid.innerHTML = "";
-    const total = state.archivedProducts.length;
+    const total = state.archivedTotal;
     qs("archiveMeta").textContent = `Архив: ${total}`;
+    qs("archiveMore").classList.toggle("hidden", !state.archivedHasMore);
 
     for (const p of state.archivedProducts) {
         const img = (p.imageUrls && p.imageUrls.length > 0) ? p.imageUrls[0] : null;
@@ -711,6 +882,9 @@ async function toggleActive(p) {
 async function archiveProduct(p, archived) {
     try {
         const updated = await apiPatch(`/api/admin/products/${p.id}/archived`, {archived});
+        const delta = archived ? 1 : -1;
+        state.archivedTotal = Math.max(0, state.archivedTotal + delta);
+        state.productsTotal = Math.max(0, state.productsTotal - delta);
         if (archived) {
             state.products = state.products.filter((item) => String(item.id) !== String(updated.id));
             state.archivedProducts = [updated, ...state.archivedProducts];
@@ -813,6 +987,7 @@ function openEditModal(p) {
         try {
             const updated = await apiPatch(`/api/admin/products/${p.id}`, payload);
             state.products = state.products.map((item) => String(item.id) === String(updated.id) ? updated : item);
+            await loadImageJobs();
             renderProducts();
             closeModal();
         } catch (err) {
@@ -1046,7 +1221,7 @@ function renderPromoCodes() {
     qs("promoMeta").textContent = `Всего промокодов: ${state.promoCodes.length}`;
 }
 
-function boot() {
+async function boot() {
     document.addEventListener("click", (e) => {
         if (!e.target.closest(".tag-picker")) {
             closeAllTagDropdowns();
@@ -1083,6 +1258,16 @@ function boot() {
     });
     qs("tabCatalog").addEventListener("click", () => setActiveTab("catalog"));
     qs("tabOrders").addEventListener("click", () => setActiveTab("orders"));
+    qs("ordersStatus").addEventListener("change", () => loadOrders());
+    qs("ordersMore").addEventListener("click", () => loadOrders(true));
+    qs("productsMore").addEventListener("click", () => loadProducts(true));
+    qs("archiveMore").addEventListener("click", () => loadArchived(true));
+    qs("productTagFilter").addEventListener("change", () => loadProducts());
+    let searchTimer = null;
+    qs("productSearch").addEventListener("input", () => {
+        window.clearTimeout(searchTimer);
+        searchTimer = window.setTimeout(() => loadProducts(), 300);
+    });
     qs("tabArchive").addEventListener("click", () => setActiveTab("archive"));
     qs("tabTags").addEventListener("click", () => setActiveTab("tags"));
     qs("tabPromos").addEventListener("click", () => setActiveTab("promos"));
@@ -1135,7 +1320,9 @@ function boot() {
         }
     });
 
-    if (state.password) {
+    sessionStorage.removeItem("tgshop_admin_password");
+    window.Telegram?.WebApp?.ready();
+    if (state.token || await loginWithInitData()) {
         showLogin(false);
         loadTags();
         setActiveTab("catalog");
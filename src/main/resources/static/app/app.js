@@ -26,6 +26,9 @@ const state = {
     tags: [],
     activeTagId: "all",
     searchQuery: "",
+    search: null, // {query, tagId, sort, ids, page, hasMore, facets} — ответ /api/products/search
+    searchSeq: 0,
+    searchTimer: null,
     cart: new Map(), // key -> {product, variantId, variant, qty}
     appInfo: null,
     pendingProductId: null,
@@ -166,6 +169,24 @@ function productsEndpoint() {
     return "/api/products";
 }
 
+const SEARCH_PAGE_SIZE = 40;
+const SEARCH_DEBOUNCE_MS = 250;
+
+// сортирует сервер: пересортировать у себя можно только загруженные страницы, а не всю выдачу
+function searchEndpoint(query, tagId, sort, page) {
+    const params = new URLSearchParams({q: query, sort, page: String(page), size: String(SEARCH_PAGE_SIZE)});
+    if (tagId !== "all") params.set("tagId", tagId);
+    return `/api/products/search?${params}`;
+}
+
+const THUMB_WIDTH = 640;
+
+// Локальные картинки сервер умеет отдавать уменьшенными — для карточек каталога берём превью.
+function thumbUrl(url) {
+    if (!url || url.includes("?") || !/\/media\/[^/]+$/.test(url)) return url;
+    return `${url}?w=${THUMB_WIDTH}`;
+}
+
 function buildTags(products) {
     const tagMap = new Map();
     products.forEach((p) => {
@@ -194,11 +215,15 @@ function renderTagFilters() {
     }, [document.createTextNode("Все")]);
     container.append(allBtn);
 
+    // во время поиска рядом с тегом — сколько найденных товаров в нём
+    const facets = state.search ? state.search.facets : null;
     state.tags.forEach((tag) => {
+        const count = facets ? (facets.get(String(tag.id)) || 0) : null;
+        const label = count === null ? tag.name : `${tag.name} · ${count}`;
         container.append(el("button", {
             class: `tag-filter${state.activeTagId === String(tag.id) ? " active" : ""}`,
             onclick: () => setActiveTag(String(tag.id)),
-        }, [document.createTextNode(tag.name)]));
+        }, [document.createTextNode(label)]));
     });
 }
 
@@ -209,11 +234,85 @@ function setActiveTag(tagId) {
 }
 
 function applyFilters() {
+    const query = normalizeText(state.searchQuery);
+    // фильтр по тегу тоже считает сервер — по битовым множествам тегов
+    if (query || state.activeTagId !== "all") {
+        const s = state.search;
+        if (s && s.query === query && s.tagId === state.activeTagId && s.sort === state.sort) {
+            updateFilteredProducts();
+            renderProducts();
+            return;
+        }
+        // клик по тегу или смена сортировки — сразу, набор текста — с задержкой
+        if (!query || (s && s.query === query)) runSearch(false);
+        else scheduleSearch();
+        return;
+    }
+    const hadSearch = state.search !== null;
+    state.search = null;
+    clearTimeout(state.searchTimer);
+    state.searchSeq++;
     updateFilteredProducts();
     renderProducts();
+    if (hadSearch) renderTagFilters();
+}
+
+function scheduleSearch() {
+    clearTimeout(state.searchTimer);
+    state.searchTimer = setTimeout(() => runSearch(false), SEARCH_DEBOUNCE_MS);
+}
+
+/** Поиск и фильтр по тегу идут на сервере; append — следующая страница той же выдачи. */
+async function runSearch(append) {
+    clearTimeout(state.searchTimer);
+    const query = normalizeText(state.searchQuery);
+    const tagId = state.activeTagId;
+    const sort = state.sort;
+    const page = append && state.search ? state.search.page + 1 : 0;
+    const seq = ++state.searchSeq;
+    let res;
+    try {
+        res = await apiGet(searchEndpoint(query, tagId, sort, page));
+    } catch (e) {
+        console.warn("search failed", e);
+        if (seq === state.searchSeq) toast("Поиск недоступен");
+        return;
+    }
+    if (seq !== state.searchSeq) return;
+
+    const ids = append && state.search ? state.search.ids : [];
+    const byId = new Map(state.products.map(p => [String(p.id), p]));
+    for (const p of res.products || []) {
+        const pid = String(p.id);
+        // товар мог появиться в снимке раньше, чем мы перечитали витрину
+        if (!byId.has(pid)) state.products.push(p);
+        ids.push(pid);
+    }
+    state.search = {
+        query,
+        tagId,
+        sort,
+        ids,
+        page: res.page,
+        hasMore: !!res.hasMore,
+        facets: new Map((res.facets || []).map(f => [String(f.id), f.count])),
+    };
+    updateFilteredProducts();
+    if (append) syncProductCards();
+    else renderProducts();
+    renderTagFilters();
 }
 
 function updateFilteredProducts() {
+    if (state.search) {
+        const byId = new Map(state.products.map(p => [String(p.id), p]));
+        // выдача уже в порядке state.sort — его задал сервер
+        state.filteredProducts = state.search.ids.map(id => byId.get(id)).filter(Boolean);
+        updateSearchMore();
+        return;
+    }
+    updateSearchMore();
+
     const query = normalizeText(state.searchQuery);
     let filtered = [...state.products];
 
@@ -230,6 +329,11 @@ function updateFilteredProducts() {
     state.filteredProducts = sortedProducts(filtered);
 }
 
+function updateSearchMore() {
+    const btn = qs("searchMore");
+    if (btn) btn.classList.toggle("hidden", !(state.search && state.search.hasMore));
+}
+
 function createTagList(tags) {
     const list = el("div", {class: "tag-list"});
     (tags || []).forEach((tag) => {
@@ -402,7 +506,7 @@ function createProductCard(p) {
     const card = el("div", {class: "card product", "data-product-id": pid});
 
     const thumbImg = img
-        ? el("img", {src: img, alt: p.title, "data-thumb-id": pid})
+        ? el("img", {src: thumbUrl(img), alt: p.title, "data-thumb-id": pid})
         : null;
 
     const thumb = el("div", {class: "thumb"},
@@ -480,7 +584,7 @@ function updateCardData(card, p, old) {
     const newImg = (p.imageUrls && p.imageUrls[0]) ? p.imageUrls[0] : null;
     if (oldImg !== newImg) {
         const imgEl = card.querySelector(`img[data-thumb-id="${String(p.id)}"]`);
-        if (imgEl && newImg) imgEl.src = newImg;
+        if (imgEl && newImg) imgEl.src = thumbUrl(newImg);
     }
 }
 
@@ -614,6 +718,7 @@ qs("searchInput").addEventListener("input", (e) => {
     state.searchQuery = String(e.target.value || "");
     applyFilters();
 });
+qs("searchMore").addEventListener("click", () => runSearch(true));
 qs("searchClear").addEventListener("click", () => {
     state.searchQuery = "";
     qs("searchInput").value = "";
@@ -1194,7 +1299,7 @@ function startThumbRotator() {
                 if (imgEl._fadeTimer) window.clearTimeout(imgEl._fadeTimer);
                 imgEl.classList.add("thumb-fade");
                 imgEl._fadeTimer = window.setTimeout(() => {
-                    imgEl.src = urls[next];
+                    imgEl.src = thumbUrl(urls[next]);
                     requestAnimationFrame(() => imgEl.classList.remove("thumb-fade"));
                 }, 240);
             }, delay);
@@ -0,0 +1,129 @@
+package com.example.tgshop.catalog;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.example.tgshop.api.dto.ProductDto;
+import com.example.tgshop.api.dto.ProductVariantDto;
+import com.example.tgshop.api.dto.TagDto;
+import com.example.tgshop.api.dto.TagFacetDto;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+
+class CatalogSearchIndexTest {
+
+  private static final TagDto TEA = new TagDto(UUID.randomUUID(), "Чай");
+  private static final TagDto GIFT = new TagDto(UUID.randomUUID(), "Подарки");
+
+  private final ProductDto puer = product("Пуэр Шу", "Выдержанный чёрный чай", 900, 5, 3, List.of(TEA));
+  private final ProductDto oolong = product("Улун молочный", null, 700, 0, 10, List.of(TEA, GIFT));
+  private final ProductDto teapot = product("Чайник глиняный", "Исинская глина", 2500, 2, 1, List.of(GIFT));
+  private final ProductDto cups = product("Набор пиал", "6 шт., фарфор", 700, 4, 7, List.of(),
+      new ProductVariantDto(UUID.randomUUID(), "Белый", 2));
+
+  private final List<ProductDto> products = List.of(puer, oolong, teapot, cups);
+  private final CatalogSearchIndex index = build(products, null);
+
+  @Test
+  void tokenizeSplitsOnNonLetterDigitsAndNormalizes() {
+    assertThat(CatalogSearchIndex.tokenize("Зелёный ЧАЙ, 100г — Ёлка!")).containsExactly("зеленый", "чай", "100г", "елка");
+    assertThat(CatalogSearchIndex.tokenize("tea-pot_2024")).containsExactly("tea", "pot", "2024");
+    assertThat(CatalogSearchIndex.tokenize("  ")).isEmpty();
+    assertThat(CatalogSearchIndex.tokenize(null)).isEmpty();
+  }
+
+  @Test
+  void matchesEachQueryWordAsPrefix() {
+    // улун находится по тегу «Чай» и, как товар без остатка, идёт последним
+    assertThat(titles("ча")).containsExactly(puer.title(), teapot.title(), oolong.title());
+    assertThat(titles("глин")).containsExactly(teapot.title());
+    assertThat(titles("ЧЁРН")).containsExactly(puer.title());
+  }
+
+  @Test
+  void intersectsQueryWords() {
+    assertThat(titles("чай выдерж")).containsExactly(puer.title());
+    assertThat(titles("чайник выдерж")).isEmpty();
+  }
+
+  @Test
+  void indexesTagAndVariantNames() {
+    assertThat(titles("подар")).containsExactly(teapot.title(), oolong.title());
+    assertThat(titles("белый")).containsExactly(cups.title());
+  }
+
+  @Test
+  void emptyQueryMatchesWholeCatalogWithOutOfStockLast() {
+    var result = index.search("  ", List.of(), CatalogTagIndex.Mode.ALL, CatalogSearchIndex.Sort.DEFAULT, 0, 10);
+
+    assertThat(result.totalCount()).isEqualTo(4);
+    assertThat(result.products()).containsExactly(puer, teapot, cups, oolong);
+  }
+
+  @Test
+  void sortsWholeResultBeforePaging() {
+    var first = index.search("", null, CatalogTagIndex.Mode.ALL, CatalogSearchIndex.Sort.PRICE_DESC, 0, 2);
+    var second = index.search("", null, CatalogTagIndex.Mode.ALL, CatalogSearchIndex.Sort.PRICE_DESC, 1, 2);
+
+    assertThat(first.products()).containsExactly(teapot, puer);
+    // при равной цене — порядок витрины
+    assertThat(second.products()).containsExactly(oolong, cups);
+    assertThat(index.search("", null, CatalogTagIndex.Mode.ALL, CatalogSearchIndex.Sort.PRICE_ASC, 0, 10).products())
+        .containsExactly(oolong, cups, puer, teapot);
+    assertThat(index.search("", null, CatalogTagIndex.Mode.ALL, CatalogSearchIndex.Sort.SOLD, 0, 10).products())
+        .containsExactly(oolong, cups, puer, teapot);
+  }
+
+  @Test
+  void filtersByTagsButCountsFacetsBeforeTheFilter() {
+    var result = index.search("выдерж", List.of(GIFT.id()), CatalogTagIndex.Mode.ANY, CatalogSearchIndex.Sort.DEFAULT, 0, 10);
+
+    assertThat(result.products()).isEmpty();
+    assertThat(result.totalCount()).isZero();
+    assertThat(result.facets()).containsExactly(new TagFacetDto(TEA.id(), TEA.name(), 1));
+
+    var both = index.search("ча", List.of(GIFT.id(), TEA.id()), CatalogTagIndex.Mode.ALL,
+        CatalogSearchIndex.Sort.DEFAULT, 0, 10);
+    assertThat(both.products()).containsExactly(oolong);
+    // при равных счётчиках — по имени
+    assertThat(both.facets()).containsExactly(
+        new TagFacetDto(GIFT.id(), GIFT.name(), 2),
+        new TagFacetDto(TEA.id(), TEA.name(), 2));
+  }
+
+  @Test
+  void reusesTokensOfUnchangedProducts() {
+    var renamed = new ProductDto(puer.id(), "Пуэр Шен", puer.description(), puer.priceMinor(), puer.currency(),
+        puer.stock(), puer.imageUrls(), puer.tags(), puer.variants(), true, false, puer.soldCount());
+    var next = build(List.of(renamed, oolong, teapot, cups), index);
+
+    assertThat(next.reindexedSince(index)).isEqualTo(1);
+    assertThat(build(products, index).reindexedSince(index)).isZero();
+    assertThat(next.search("шен", null, CatalogTagIndex.Mode.ALL, CatalogSearchIndex.Sort.DEFAULT, 0, 10).totalCount())
+        .isEqualTo(1);
+    assertThat(next.search("шу", null, CatalogTagIndex.Mode.ALL, CatalogSearchIndex.Sort.DEFAULT, 0, 10).totalCount())
+        .isZero();
+  }
+
+  private List<String> titles(String query) {
+    return index.search(query, null, CatalogTagIndex.Mode.ALL, CatalogSearchIndex.Sort.DEFAULT, 0, 10)
+        .products().stream().map(ProductDto::title).toList();
+  }
+
+  private static CatalogSearchIndex build(List<ProductDto> products, CatalogSearchIndex previous) {
+    return CatalogSearchIndex.build(products, CatalogTagIndex.build(products, List.of(TEA, GIFT)), previous);
+  }
+
+  private static ProductDto product(
+      String title,
+      String description,
+      long priceMinor,
+      int stock,
+      long soldCount,
+      List<TagDto> tags,
+      ProductVariantDto... variants
+  ) {
+    return new ProductDto(UUID.randomUUID(), title, description, priceMinor, "RUB", stock, List.of(), tags,
+        List.of(variants), true, false, soldCount);
+  }
+}
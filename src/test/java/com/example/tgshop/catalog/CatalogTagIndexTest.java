@@ -0,0 +1,93 @@
+package com.example.tgshop.catalog;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.example.tgshop.api.dto.ProductDto;
+import com.example.tgshop.api.dto.TagDto;
+import com.example.tgshop.api.dto.TagFacetDto;
+import java.util.BitSet;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+
+class CatalogTagIndexTest {
+
+  private static final TagDto TEA = new TagDto(UUID.randomUUID(), "Чай");
+  private static final TagDto GIFT = new TagDto(UUID.randomUUID(), "Подарки");
+  private static final TagDto NEW = new TagDto(UUID.randomUUID(), "Новинки");
+  private static final TagDto EMPTY = new TagDto(UUID.randomUUID(), "Пустой");
+
+  // позиции: 0 — чай, 1 — чай+подарок, 2 — подарок, 3 — без тегов, 4 — новинка (тег только у товара)
+  private final CatalogTagIndex index = CatalogTagIndex.build(List.of(
+      product(TEA),
+      product(TEA, GIFT),
+      product(GIFT),
+      product(),
+      product(NEW)
+  ), List.of(TEA, GIFT, EMPTY));
+
+  @Test
+  void noTagsMatchWholeSnapshot() {
+    assertThat(ordinals(index.matching(List.of(), CatalogTagIndex.Mode.ALL))).containsExactly(0, 1, 2, 3, 4);
+    assertThat(ordinals(index.matching(null, CatalogTagIndex.Mode.ANY))).containsExactly(0, 1, 2, 3, 4);
+  }
+
+  @Test
+  void allModeIntersectsTags() {
+    assertThat(ordinals(index.matching(List.of(TEA.id()), CatalogTagIndex.Mode.ALL))).containsExactly(0, 1);
+    assertThat(ordinals(index.matching(List.of(TEA.id(), GIFT.id()), CatalogTagIndex.Mode.ALL))).containsExactly(1);
+    assertThat(ordinals(index.matching(List.of(TEA.id(), EMPTY.id()), CatalogTagIndex.Mode.ALL))).isEmpty();
+  }
+
+  @Test
+  void anyModeUnitesTags() {
+    assertThat(ordinals(index.matching(List.of(TEA.id(), GIFT.id()), CatalogTagIndex.Mode.ANY)))
+        .containsExactly(0, 1, 2);
+    assertThat(ordinals(index.matching(List.of(GIFT.id(), NEW.id()), CatalogTagIndex.Mode.ANY)))
+        .containsExactly(1, 2, 4);
+  }
+
+  @Test
+  void unknownTagCutsEverythingInAllAndAddsNothingInAny() {
+    UUID unknown = UUID.randomUUID();
+
+    assertThat(ordinals(index.matching(List.of(TEA.id(), unknown), CatalogTagIndex.Mode.ALL))).isEmpty();
+    assertThat(ordinals(index.matching(List.of(TEA.id(), unknown), CatalogTagIndex.Mode.ANY))).containsExactly(0, 1);
+    assertThat(ordinals(index.matching(List.of(unknown), CatalogTagIndex.Mode.ANY))).isEmpty();
+  }
+
+  @Test
+  void matchingReturnsACopy() {
+    var bits = index.matching(List.of(TEA.id()), CatalogTagIndex.Mode.ANY);
+    bits.clear();
+
+    assertThat(ordinals(index.matching(List.of(TEA.id()), CatalogTagIndex.Mode.ANY))).containsExactly(0, 1);
+  }
+
+  @Test
+  void facetsCountCandidatesAndSkipZeroes() {
+    var candidates = new BitSet();
+    candidates.set(1, 5);
+
+    assertThat(index.facets(candidates)).containsExactly(
+        new TagFacetDto(GIFT.id(), GIFT.name(), 2),
+        new TagFacetDto(NEW.id(), NEW.name(), 1),
+        new TagFacetDto(TEA.id(), TEA.name(), 1));
+    assertThat(index.tagCount()).isEqualTo(4);
+  }
+
+  @Test
+  void emptyIndexMatchesNothing() {
+    assertThat(CatalogTagIndex.empty().matching(List.of(), CatalogTagIndex.Mode.ALL).isEmpty()).isTrue();
+    assertThat(CatalogTagIndex.empty().matching(List.of(TEA.id()), CatalogTagIndex.Mode.ANY).isEmpty()).isTrue();
+  }
+
+  private static List<Integer> ordinals(BitSet bits) {
+    return bits.stream().boxed().toList();
+  }
+
+  private static ProductDto product(TagDto... tags) {
+    return new ProductDto(UUID.randomUUID(), "Товар", null, 100, "RUB", 1, List.of(), List.of(tags), List.of(),
+        true, false, 0);
+  }
+}
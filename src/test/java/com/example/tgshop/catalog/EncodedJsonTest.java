@@ -0,0 +1,83 @@
+package com.example.tgshop.catalog;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+
+class EncodedJsonTest {
+
+  private static final byte[] JSON = "[{\"id\":1,\"title\":\"Чай\"}]".getBytes(StandardCharsets.UTF_8);
+
+  private final EncodedJson json = EncodedJson.encode(JSON);
+
+  @Test
+  void etagDependsOnlyOnContent() {
+    assertThat(json.etag()).startsWith("\"").endsWith("\"");
+    assertThat(EncodedJson.encode(JSON.clone()).etag()).isEqualTo(json.etag());
+    assertThat(EncodedJson.encode("[]".getBytes(StandardCharsets.UTF_8)).etag()).isNotEqualTo(json.etag());
+    assertThat(json.gzipEtag()).isNotEqualTo(json.etag()).endsWith("-gzip\"");
+  }
+
+  @Test
+  void servesIdentityWithoutAcceptEncoding() {
+    var response = json.toResponse(null, null);
+
+    assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+    assertThat(response.getBody()).isEqualTo(JSON);
+    assertThat(response.getHeaders().getETag()).isEqualTo(json.etag());
+    assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isNull();
+    assertThat(response.getHeaders().getVary()).contains(HttpHeaders.ACCEPT_ENCODING);
+  }
+
+  @Test
+  void servesGzipWithItsOwnEtag() throws IOException {
+    var response = json.toResponse(null, "br, gzip;q=0.8");
+
+    assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+    assertThat(response.getHeaders().getETag()).isEqualTo(json.gzipEtag());
+    assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+    try (var in = new GZIPInputStream(new ByteArrayInputStream(response.getBody()))) {
+      assertThat(in.readAllBytes()).isEqualTo(JSON);
+    }
+  }
+
+  @Test
+  void gzipWithZeroQualityIsRefused() {
+    var response = json.toResponse(null, "gzip;q=0");
+
+    assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isNull();
+    assertThat(response.getBody()).isEqualTo(JSON);
+  }
+
+  @Test
+  void matchingIfNoneMatchGivesNotModifiedWithoutBody() {
+    var response = json.toResponse(json.etag(), null);
+
+    assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+    assertThat(response.getBody()).isNull();
+    assertThat(response.getHeaders().getETag()).isEqualTo(json.etag());
+  }
+
+  @Test
+  void eitherRepresentationEtagOrWildcardMatches() {
+    // прокси мог отдать клиенту gzip-версию, а повторный запрос прийти без Accept-Encoding
+    assertThat(json.toResponse(json.gzipEtag(), null).getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+    assertThat(json.toResponse("W/" + json.etag(), "gzip").getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+    assertThat(json.toResponse("\"other\", " + json.etag(), null).getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+    assertThat(json.toResponse("*", null).getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+  }
+
+  @Test
+  void staleEtagGetsFullResponse() {
+    var response = json.toResponse("\"0123456789abcdef\"", null);
+
+    assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+    assertThat(response.getBody()).isEqualTo(JSON);
+  }
+}
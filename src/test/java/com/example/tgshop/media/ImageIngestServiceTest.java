@@ -0,0 +1,151 @@
+package com.example.tgshop.media;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.example.tgshop.common.UuidUtil;
+import com.example.tgshop.config.AppProperties;
+import com.example.tgshop.product.Product;
+import com.example.tgshop.product.ProductImage;
+import com.example.tgshop.product.ProductRepository;
+import com.example.tgshop.tg.TgPostImageResolver;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.PlatformTransactionManager;
+
+class ImageIngestServiceTest {
+
+  private static final List<String> SOURCE = List.of("https://example.com/a.jpg");
+  private static final List<String> STORED = List.of("/media/a");
+
+  private final ImageIngestJobRepository jobRepository = mock(ImageIngestJobRepository.class);
+  private final TgPostImageResolver resolver = mock(TgPostImageResolver.class);
+  private final ImageStorageService storage = mock(ImageStorageService.class);
+  private final ProductRepository productRepository = mock(ProductRepository.class);
+  private final ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+  private final AppProperties props = new AppProperties();
+  private ImageIngestService service;
+
+  @AfterEach
+  void tearDown() {
+    if (service != null) {
+      service.shutdown();
+    }
+  }
+
+  private ImageIngestService start() {
+    service = new ImageIngestService(jobRepository, resolver, storage, productRepository, eventPublisher,
+        mock(PlatformTransactionManager.class), props);
+    return service;
+  }
+
+  @Test
+  void claimsWithLeaseAndAppliesImagesAfterCompleting() {
+    var product = product();
+    var job = job(1L, product, 1);
+    stubDue(job);
+    when(jobRepository.complete(eq(1L), eq(1), any())).thenReturn(1);
+    start();
+
+    service.poll();
+
+    verify(productRepository, timeout(2000)).save(product);
+    assertThat(product.getImages()).extracting(ProductImage::getUrl).containsExactlyElementsOf(STORED);
+    verify(eventPublisher).publishEvent(any(Object.class));
+    var now = ArgumentCaptor.forClass(Instant.class);
+    var leaseUntil = ArgumentCaptor.forClass(Instant.class);
+    verify(jobRepository).claim(eq(1L), now.capture(), leaseUntil.capture());
+    // пока аренда не истекла, задача не выдаётся другим инстансам
+    assertThat(Duration.between(now.getValue(), leaseUntil.getValue())).isEqualTo(Duration.ofMinutes(10));
+  }
+
+  @Test
+  void supersededResultIsDiscardedAndReleased() {
+    var product = product();
+    var job = job(1L, product, 1);
+    stubDue(job);
+    when(jobRepository.complete(eq(1L), eq(1), any())).thenReturn(0);
+    start();
+
+    service.poll();
+
+    verify(storage, timeout(2000)).releaseUrls(product.uuid(), STORED);
+    verify(productRepository, never()).save(any());
+    verify(eventPublisher, never()).publishEvent(any(Object.class));
+  }
+
+  @Test
+  void failedAttemptIsRequeuedWithBackoffForTheSameAttempt() {
+    props.getMedia().setIngestBackoff(Duration.ofSeconds(30));
+    var job = job(1L, product(), 2);
+    stubDue(job);
+    when(storage.downloadImages(any(), any(), eq(false))).thenThrow(new IllegalStateException("boom"));
+    start();
+
+    service.poll();
+
+    var nextAttemptAt = ArgumentCaptor.forClass(Instant.class);
+    verify(jobRepository, timeout(2000)).fail(eq(1L), eq(2), eq(ImageIngestJob.PENDING), eq("boom"),
+        nextAttemptAt.capture(), any());
+    // вторая попытка: 30s * 2^1
+    assertThat(nextAttemptAt.getValue()).isCloseTo(Instant.now().plusSeconds(60), within(5, ChronoUnit.SECONDS));
+    verify(jobRepository, never()).complete(any(), anyInt(), any());
+  }
+
+  @Test
+  void dueQueryPicksUpRunningJobsWhoseLeaseExpired() throws NoSuchMethodException {
+    // без базы запросы не выполнить — проверяем, что зависшие RUNNING-задачи не потерялись
+    var due = ImageIngestJobRepository.class.getMethod("findDueIds", Instant.class, Pageable.class)
+        .getAnnotation(Query.class);
+    var claim = ImageIngestJobRepository.class.getMethod("claim", Long.class, Instant.class, Instant.class)
+        .getAnnotation(Query.class);
+
+    assertThat(due.value()).contains("in ('PENDING', 'RUNNING')", "j.nextAttemptAt <= :now");
+    assertThat(claim.value()).contains("in ('PENDING', 'RUNNING')", "j.nextAttemptAt <= :now");
+  }
+
+  private void stubDue(ImageIngestJob job) {
+    when(jobRepository.findDueIds(any(), any())).thenReturn(List.of(job.getId()), List.of());
+    when(jobRepository.claim(eq(job.getId()), any(), any())).thenReturn(1);
+    when(jobRepository.findById(job.getId())).thenReturn(Optional.of(job));
+    when(resolver.resolveImages(SOURCE)).thenReturn(SOURCE);
+    when(storage.downloadImages(job.productUuid(), SOURCE, false)).thenReturn(STORED);
+  }
+
+  private Product product() {
+    var product = new Product();
+    product.setId(UuidUtil.toBytes(UUID.randomUUID()));
+    when(productRepository.findById(aryEq(product.getId()))).thenReturn(Optional.of(product));
+    return product;
+  }
+
+  /** attempts — как после claim, который увеличивает счётчик в базе. */
+  private static ImageIngestJob job(long id, Product product, int attempts) {
+    var job = new ImageIngestJob();
+    job.setId(id);
+    job.setProductId(product.getId());
+    job.setSourceUrls(String.join("\n", SOURCE));
+    job.setStatus(ImageIngestJob.RUNNING);
+    job.setAttempts(attempts);
+    return job;
+  }
+}
@@ -0,0 +1,182 @@
+package com.example.tgshop.order;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.example.tgshop.common.UuidUtil;
+import com.example.tgshop.config.AppProperties;
+import com.example.tgshop.tg.TelegramNotifyService;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+
+class OrderNotificationDispatcherTest {
+
+    private final OrderNotificationRepository notificationRepository = mock(OrderNotificationRepository.class);
+    private final OrderRepository orderRepository = mock(OrderRepository.class);
+    private final TelegramNotifyService notifyService = mock(TelegramNotifyService.class);
+    private final AppProperties props = new AppProperties();
+    private OrderNotificationDispatcher dispatcher;
+
+    @AfterEach
+    void tearDown() {
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+        }
+    }
+
+    private OrderNotificationDispatcher start() {
+        dispatcher = new OrderNotificationDispatcher(notificationRepository, orderRepository, notifyService, props);
+        return dispatcher;
+    }
+
+    @Test
+    void claimsWithLeaseAndMarksSent() throws Exception {
+        var order = order();
+        var notification = notification(1L, order, OrderNotification.Kind.ORDER_PLACED, 1);
+        stubDue(notification);
+        when(notificationRepository.claim(eq(1L), any(), any())).thenReturn(1);
+        start();
+
+        dispatcher.dispatch();
+
+        verify(notificationRepository, timeout(2000)).save(notification);
+        verify(notifyService).notifyUserOrderPlaced(order);
+        assertThat(notification.getStatus()).isEqualTo(OrderNotification.SENT);
+        var now = ArgumentCaptor.forClass(Instant.class);
+        var leaseUntil = ArgumentCaptor.forClass(Instant.class);
+        verify(notificationRepository).claim(eq(1L), now.capture(), leaseUntil.capture());
+        // пока аренда не истекла, запись не выдаётся другим инстансам
+        assertThat(Duration.between(now.getValue(), leaseUntil.getValue())).isEqualTo(Duration.ofMinutes(10));
+    }
+
+    @Test
+    void skipsRowsClaimedElsewhere() throws Exception {
+        var notification = notification(1L, order(), OrderNotification.Kind.ORDER_PLACED, 1);
+        when(notificationRepository.findDueIds(any(), any())).thenReturn(List.of(notification.getId()));
+        when(notificationRepository.claim(eq(1L), any(), any())).thenReturn(0);
+        start();
+
+        dispatcher.dispatch();
+
+        Thread.sleep(100);
+        verify(notificationRepository, never()).findById(any());
+        verify(notificationRepository, never()).save(any());
+    }
+
+    @Test
+    void failedSendIsRetriedWithBackoff() throws Exception {
+        props.getTelegram().setOutboxBackoff(Duration.ofSeconds(10));
+        var order = order();
+        var notification = notification(1L, order, OrderNotification.Kind.NEW_ORDER_ADMIN, 3);
+        stubDue(notification);
+        when(notificationRepository.claim(eq(1L), any(), any())).thenReturn(1);
+        doThrow(new IllegalStateException("chat not found")).when(notifyService).notifyNewOrder(order);
+        start();
+
+        dispatcher.dispatch();
+
+        verify(notificationRepository, timeout(2000)).save(notification);
+        assertThat(notification.getStatus()).isEqualTo(OrderNotification.PENDING);
+        assertThat(notification.getLastError()).isEqualTo("chat not found");
+        // третья попытка: 10s * 2^2
+        assertThat(notification.getNextAttemptAt()).isCloseTo(Instant.now().plusSeconds(40), within(5, ChronoUnit.SECONDS));
+    }
+
+    @Test
+    void givesUpAfterMaxAttempts() throws Exception {
+        props.getTelegram().setOutboxMaxAttempts(3);
+        var order = order();
+        var notification = notification(1L, order, OrderNotification.Kind.ORDER_SHIPPED, 3);
+        stubDue(notification);
+        when(notificationRepository.claim(eq(1L), any(), any())).thenReturn(1);
+        doThrow(new IllegalStateException("blocked")).when(notifyService).notifyUserOrderShipped(order);
+        start();
+
+        dispatcher.dispatch();
+
+        verify(notificationRepository, timeout(2000)).save(notification);
+        assertThat(notification.getStatus()).isEqualTo(OrderNotification.FAILED);
+        assertThat(notification.getLastError()).isEqualTo("blocked");
+    }
+
+    @Test
+    void dropsNotificationOfDeletedOrder() throws Exception {
+        var notification = notification(1L, order(), OrderNotification.Kind.ORDER_APPROVED, 1);
+        when(notificationRepository.findDueIds(any(), any())).thenReturn(List.of(1L), List.of());
+        when(notificationRepository.findById(1L)).thenReturn(Optional.of(notification));
+        when(notificationRepository.claim(eq(1L), any(), any())).thenReturn(1);
+        when(orderRepository.findByIdWithItems(any())).thenReturn(Optional.empty());
+        start();
+
+        dispatcher.dispatch();
+
+        verify(notificationRepository, timeout(2000)).save(notification);
+        assertThat(notification.getStatus()).isEqualTo(OrderNotification.FAILED);
+        assertThat(notification.getLastError()).isEqualTo("Order not found");
+    }
+
+    @Test
+    void dueQueryHoldsBackLaterNotificationsOfTheSameOrder() throws NoSuchMethodException {
+        // без базы запрос не выполнить — проверяем, что условие порядка по заказу не потерялось
+        var query = OrderNotificationRepository.class.getMethod("findDueIds", Instant.class, Pageable.class)
+                .getAnnotation(Query.class);
+
+        assertThat(query.value()).contains("not exists", "e.orderId = n.orderId", "e.id < n.id");
+    }
+
+    @Test
+    void purgeDeletesOldSentRowsInBatches() {
+        props.getTelegram().setOutboxSentRetention(Duration.ofDays(7));
+        when(notificationRepository.deleteSent(any(), anyInt())).thenReturn(5000, 5000, 12);
+        start();
+
+        dispatcher.purgeSent();
+
+        var before = ArgumentCaptor.forClass(Instant.class);
+        verify(notificationRepository, times(3)).deleteSent(before.capture(), eq(5000));
+        assertThat(before.getValue()).isCloseTo(Instant.now().minus(Duration.ofDays(7)), within(5, ChronoUnit.SECONDS));
+    }
+
+    private void stubDue(OrderNotification notification) {
+        when(notificationRepository.findDueIds(any(), any())).thenReturn(List.of(notification.getId()), List.of());
+        when(notificationRepository.findById(notification.getId())).thenReturn(Optional.of(notification));
+    }
+
+    private OrderEntity order() {
+        var order = new OrderEntity();
+        order.setId(UuidUtil.toBytes(UUID.randomUUID()));
+        when(orderRepository.findByIdWithItems(aryEq(order.getId()))).thenReturn(Optional.of(order));
+        return order;
+    }
+
+    /** attempts — как после claim, который увеличивает счётчик в базе. */
+    private static OrderNotification notification(long id, OrderEntity order, OrderNotification.Kind kind, int attempts) {
+        var notification = new OrderNotification();
+        notification.setId(id);
+        notification.setOrderId(order.getId());
+        notification.setKind(kind);
+        notification.setStatus(OrderNotification.SENDING);
+        notification.setAttempts(attempts);
+        return notification;
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.tgshop.order;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import com.example.tgshop.common.UuidUtil;
+import com.example.tgshop.product.ProductRepository;
+import com.example.tgshop.product.ProductVariantRepository;
+import com.example.tgshop.promo.PromoCodeRepository;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+
+class OrderServiceCursorTest {
+
+    private static final OrderService.OrderFilter NO_FILTER = new OrderService.OrderFilter(null, null, null, null);
+
+    private final OrderRepository orderRepository = mock(OrderRepository.class);
+    private final OrderService orderService = new OrderService(
+            mock(ProductRepository.class),
+            mock(ProductVariantRepository.class),
+            orderRepository,
+            mock(PromoCodeRepository.class),
+            mock(ProductSalesRepository.class),
+            mock(OrderNotificationRepository.class),
+            mock(ApplicationEventPublisher.class));
+
+    @Test
+    void nextCursorPointsAtLastOrderOfThePage() {
+        // наносекунды должны пережить курсор: created_at хранится с микросекундами
+        var first = order(Instant.parse("2026-03-01T10:00:00.123456Z"));
+        var last = order(Instant.parse("2026-03-01T09:59:59.000001Z"));
+        var extra = order(Instant.parse("2026-03-01T09:00:00Z"));
+        stubPage(first, last, extra);
+
+        var page = orderService.findPage(NO_FILTER, null, 2);
+
+        assertThat(page.orders()).containsExactly(first, last);
+        assertThat(page.nextCursor()).isNotBlank().matches("[A-Za-z0-9_-]+");
+
+        orderService.findPage(NO_FILTER, page.nextCursor(), 2);
+
+        var afterCreatedAt = ArgumentCaptor.forClass(Instant.class);
+        var afterId = ArgumentCaptor.forClass(byte[].class);
+        verify(orderRepository, times(2)).findPageIds(isNull(), isNull(), isNull(), isNull(),
+                afterCreatedAt.capture(), afterId.capture(), eq(3));
+        assertThat(afterCreatedAt.getAllValues()).containsExactly(null, last.getCreatedAt());
+        assertThat(UuidUtil.fromBytes(afterId.getValue())).isEqualTo(last.uuid());
+    }
+
+    @Test
+    void lastPageHasNoCursor() {
+        var only = order(Instant.parse("2026-03-01T10:00:00Z"));
+        stubPage(only);
+
+        assertThat(orderService.findPage(NO_FILTER, null, 2).nextCursor()).isNull();
+    }
+
+    @Test
+    void blankCursorMeansFirstPage() {
+        stubPage();
+
+        var page = orderService.findPage(NO_FILTER, " ", 10);
+
+        assertThat(page.orders()).isEmpty();
+        assertThat(page.nextCursor()).isNull();
+        verify(orderRepository).findPageIds(isNull(), isNull(), isNull(), isNull(), isNull(), isNull(), eq(11));
+    }
+
+    @Test
+    void malformedCursorIsRejectedBeforeQuerying() {
+        String notBase64 = "%%%";
+        String wrongShape = Base64.getUrlEncoder().withoutPadding().encodeToString("12.abc".getBytes());
+        String badUuid = Base64.getUrlEncoder().withoutPadding().encodeToString("12.0.not-a-uuid".getBytes());
+
+        for (String cursor : List.of(notBase64, wrongShape, badUuid)) {
+            assertThatThrownBy(() -> orderService.findPage(NO_FILTER, cursor, 10))
+                    .isInstanceOf(IllegalArgumentException.class)
+                    .hasMessage("Bad cursor");
+        }
+        verifyNoInteractions(orderRepository);
+    }
+
+    private void stubPage(OrderEntity... orders) {
+        List<byte[]> ids = new ArrayList<>();
+        for (OrderEntity order : orders) {
+            ids.add(order.getId());
+        }
+        when(orderRepository.findPageIds(any(), any(), any(), any(), any(), any(), anyInt())).thenReturn(ids);
+        when(orderRepository.findAllWithItemsByIdIn(any())).thenReturn(List.of(orders));
+    }
+
+    private static OrderEntity order(Instant createdAt) {
+        var order = new OrderEntity();
+        order.setId(UuidUtil.toBytes(UUID.randomUUID()));
+        order.setCreatedAt(createdAt);
+        return order;
+    }
+}
@@ -0,0 +1,185 @@
+package com.example.tgshop.order;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import com.example.tgshop.common.UuidUtil;
+import com.example.tgshop.product.Product;
+import com.example.tgshop.product.ProductRepository;
+import com.example.tgshop.product.ProductVariant;
+import com.example.tgshop.product.ProductVariantRepository;
+import com.example.tgshop.promo.PromoCodeRepository;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.jpa.repository.Query;
+
+@ExtendWith(MockitoExtension.class)
+class OrderServiceStockTest {
+
+    // id задают порядок блокировок: строки берутся по возрастанию UUID
+    private static final UUID PRODUCT_A = UUID.fromString("00000000-0000-0000-0000-00000000000a");
+    private static final UUID PRODUCT_B = UUID.fromString("00000000-0000-0000-0000-00000000000b");
+    private static final UUID VARIANT_1 = UUID.fromString("00000000-0000-0000-0000-000000000001");
+    private static final UUID VARIANT_2 = UUID.fromString("00000000-0000-0000-0000-000000000002");
+
+    @Mock
+    private ProductRepository productRepository;
+    @Mock
+    private ProductVariantRepository productVariantRepository;
+    @Mock
+    private OrderRepository orderRepository;
+    @Mock
+    private PromoCodeRepository promoCodeRepository;
+    @Mock
+    private ProductSalesRepository productSalesRepository;
+    @Mock
+    private OrderNotificationRepository notificationRepository;
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+    @InjectMocks
+    private OrderService orderService;
+
+    @Test
+    void lostRaceForLastItemsRollsTheOrderBack() {
+        // прочитанный остаток ещё 5, но конкурирующий заказ успел списать его раньше
+        var product = product(PRODUCT_A, 5);
+        stubProducts(product);
+        when(productRepository.decrementStock(aryEq(product.getId()), anyInt())).thenReturn(0);
+
+        assertThatThrownBy(() -> orderService.createOrder(command(new OrderService.Item(PRODUCT_A, null, 3))))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Not enough stock: " + product.getTitle());
+
+        verify(orderRepository, never()).save(any());
+        verifyNoInteractions(productSalesRepository, notificationRepository);
+    }
+
+    @Test
+    void lostRaceForVariantRollsTheOrderBack() {
+        var product = product(PRODUCT_B, 4);
+        variant(product, VARIANT_1, 4);
+        stubProducts(product);
+        when(productVariantRepository.decrementStock(aryEq(UuidUtil.toBytes(VARIANT_1)), anyInt())).thenReturn(0);
+
+        assertThatThrownBy(() -> orderService.createOrder(command(new OrderService.Item(PRODUCT_B, VARIANT_1, 2))))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Not enough stock: " + product.getTitle());
+
+        verify(orderRepository, never()).save(any());
+        verifyNoInteractions(productSalesRepository, notificationRepository);
+    }
+
+    @Test
+    void locksProductRowsInIdOrderBeforeVariantRows() {
+        var plain = product(PRODUCT_A, 10);
+        var withVariants = product(PRODUCT_B, 6);
+        variant(withVariants, VARIANT_1, 3);
+        variant(withVariants, VARIANT_2, 3);
+        stubProducts(withVariants, plain);
+        when(productRepository.decrementStock(any(), anyInt())).thenReturn(1);
+        when(productVariantRepository.decrementStock(any(), anyInt())).thenReturn(1);
+        when(orderRepository.save(any())).thenAnswer(inv -> withId(inv.getArgument(0)));
+
+        orderService.createOrder(command(
+                new OrderService.Item(PRODUCT_B, VARIANT_2, 1),
+                new OrderService.Item(PRODUCT_A, null, 2),
+                new OrderService.Item(PRODUCT_B, VARIANT_1, 2)));
+
+        var order = inOrder(productRepository, productVariantRepository);
+        order.verify(productRepository).decrementStock(aryEq(UuidUtil.toBytes(PRODUCT_A)), eq(2));
+        // остаток товара с вариантами сдвигается на сумму по вариантам, без пересчёта по строкам вариантов
+        order.verify(productRepository).adjustStock(aryEq(UuidUtil.toBytes(PRODUCT_B)), eq(-3));
+        order.verify(productVariantRepository).decrementStock(aryEq(UuidUtil.toBytes(VARIANT_1)), eq(2));
+        order.verify(productVariantRepository).decrementStock(aryEq(UuidUtil.toBytes(VARIANT_2)), eq(1));
+        order.verifyNoMoreInteractions();
+    }
+
+    @Test
+    void rejectRestoresStockOnlyOnce() {
+        var order = withId(new OrderEntity());
+        order.setStatus("NEW");
+        order.getItems().add(item(order, PRODUCT_A, null, 2));
+        order.getItems().add(item(order, PRODUCT_B, VARIANT_1, 1));
+        order.getItems().add(item(order, PRODUCT_B, VARIANT_2, 3));
+        when(orderRepository.findById(any())).thenReturn(Optional.of(order));
+        when(orderRepository.save(any())).thenAnswer(inv -> inv.getArgument(0));
+
+        orderService.reject(order.uuid(), "нет в наличии");
+        orderService.reject(order.uuid(), "нет в наличии");
+
+        var restore = inOrder(productRepository, productVariantRepository);
+        restore.verify(productRepository).incrementStock(aryEq(UuidUtil.toBytes(PRODUCT_A)), eq(2));
+        restore.verify(productRepository).incrementStock(aryEq(UuidUtil.toBytes(PRODUCT_B)), eq(4));
+        restore.verify(productVariantRepository).incrementStock(aryEq(UuidUtil.toBytes(VARIANT_1)), eq(1));
+        restore.verify(productVariantRepository).incrementStock(aryEq(UuidUtil.toBytes(VARIANT_2)), eq(3));
+        restore.verifyNoMoreInteractions();
+        assertThat(order.getStatus()).isEqualTo("REJECTED");
+    }
+
+    @Test
+    void stockAdjustmentIsClampedAtZero() throws NoSuchMethodException {
+        // сам SQL без базы не выполнить — проверяем, что GREATEST(..., 0) не потерялся из запроса
+        var query = ProductRepository.class.getMethod("adjustStock", byte[].class, int.class).getAnnotation(Query.class);
+
+        assertThat(query.value()).contains("GREATEST(stock + :delta, 0)");
+    }
+
+    private void stubProducts(Product... products) {
+        when(productRepository.findAllByIdIn(any())).thenReturn(List.of(products));
+    }
+
+    private static OrderService.CreateOrderCommand command(OrderService.Item... items) {
+        return new OrderService.CreateOrderCommand(1L, "buyer", "Покупатель", "+380000000000", "Киев", null, null,
+                List.of(items));
+    }
+
+    private static Product product(UUID id, int stock) {
+        var product = new Product();
+        product.setId(UuidUtil.toBytes(id));
+        product.setTitle("Товар " + id.toString().substring(34));
+        product.setPriceMinor(10_000);
+        product.setStock(stock);
+        return product;
+    }
+
+    private static void variant(Product product, UUID id, int stock) {
+        var variant = new ProductVariant();
+        variant.setId(UuidUtil.toBytes(id));
+        variant.setProduct(product);
+        variant.setName("Вариант " + id.toString().substring(35));
+        variant.setStock(stock);
+        product.getVariants().add(variant);
+    }
+
+    private static OrderItem item(OrderEntity order, UUID productId, UUID variantId, int quantity) {
+        var item = new OrderItem();
+        item.setOrder(order);
+        item.setProductId(UuidUtil.toBytes(productId));
+        if (variantId != null) {
+            item.setVariantId(UuidUtil.toBytes(variantId));
+        }
+        item.setQuantity(quantity);
+        return item;
+    }
+
+    private static OrderEntity withId(OrderEntity order) {
+        order.setId(UuidUtil.toBytes(UUID.randomUUID()));
+        return order;
+    }
+}
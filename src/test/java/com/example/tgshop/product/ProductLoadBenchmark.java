@@ -0,0 +1,142 @@
+package com.example.tgshop.product;
+
+import com.example.tgshop.tag.Tag;
+import jakarta.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Сравнение загрузки витрины: прежний join fetch по трём коллекциям против {@link ProductGraphLoader}.
+ *
+ * Не входит в обычный прогон тестов и в jar: mvn test -Dtest=ProductLoadBenchmark -Dbench=true
+ * (поднимает приложение целиком — лучше на отдельной БД). Синтетический каталог (app.bench.products
+ * товаров по 8 картинок, 5 тегов и 6 вариантов) создаётся внутри транзакции, которая в конце откатывается.
+ */
+@SpringBootTest
+@EnabledIfSystemProperty(named = "bench", matches = "true")
+@Slf4j
+class ProductLoadBenchmark {
+
+  private static final String FETCH_JOIN_JPQL = "select distinct p from Product p "
+      + "left join fetch p.images left join fetch p.tags left join fetch p.variants "
+      + "where p.active = true and p.archived = false order by p.createdAt desc";
+
+  private static final String ACTIVE = " WHERE p.active = true AND p.archived = false";
+  private static final String JOIN_ROWS_SQL = "SELECT COUNT(*) FROM products p "
+      + "LEFT JOIN product_images i ON i.product_id = p.id "
+      + "LEFT JOIN product_tags pt ON pt.product_id = p.id "
+      + "LEFT JOIN product_variants v ON v.product_id = p.id" + ACTIVE;
+  private static final List<String> MULTI_QUERY_ROWS_SQL = List.of(
+      "SELECT COUNT(*) FROM products p" + ACTIVE,
+      "SELECT COUNT(*) FROM products p LEFT JOIN product_images i ON i.product_id = p.id" + ACTIVE,
+      "SELECT COUNT(*) FROM products p LEFT JOIN product_tags pt ON pt.product_id = p.id" + ACTIVE,
+      "SELECT COUNT(*) FROM products p LEFT JOIN product_variants v ON v.product_id = p.id" + ACTIVE);
+
+  private static final int IMAGES_PER_PRODUCT = 8;
+  private static final int TAGS_PER_PRODUCT = 5;
+  private static final int VARIANTS_PER_PRODUCT = 6;
+  private static final int TAG_POOL = 20;
+
+  @Autowired
+  private EntityManager entityManager;
+
+  @Autowired
+  private TransactionTemplate transactionTemplate;
+
+  @Autowired
+  private ProductGraphLoader productGraphLoader;
+
+  @Value("${app.bench.products:5000}")
+  private int productCount;
+
+  @Value("${app.bench.iterations:5}")
+  private int iterations;
+
+  @Test
+  void compareCatalogLoading() {
+    transactionTemplate.executeWithoutResult(status -> {
+      seed();
+      entityManager.flush();
+      entityManager.clear();
+
+      long joinRows = count(JOIN_ROWS_SQL);
+      long multiRows = MULTI_QUERY_ROWS_SQL.stream().mapToLong(this::count).sum();
+      long joinMs = measure(() -> entityManager.createQuery(FETCH_JOIN_JPQL, Product.class).getResultList());
+      long multiMs = measure(productGraphLoader::findActive);
+
+      log.info("📚 CATALOG Benchmark products={} iterations={}", productCount, iterations);
+      log.info("📚 CATALOG   join fetch:   rows={} median={} ms", joinRows, joinMs);
+      log.info("📚 CATALOG   multi-query:  rows={} median={} ms", multiRows, multiMs);
+
+      status.setRollbackOnly();
+    });
+  }
+
+  private void seed() {
+    List<Tag> tags = new ArrayList<>(TAG_POOL);
+    String run = UUID.randomUUID().toString().substring(0, 8);
+    for (int t = 0; t < TAG_POOL; t++) {
+      var tag = new Tag();
+      tag.setName("bench-" + run + "-" + t);
+      entityManager.persist(tag);
+      tags.add(tag);
+    }
+    for (int n = 0; n < productCount; n++) {
+      var product = new Product();
+      product.setTitle("Bench product " + n);
+      product.setPriceMinor(1000 + n);
+      product.setStock(VARIANTS_PER_PRODUCT * 10);
+      for (int i = 0; i < IMAGES_PER_PRODUCT; i++) {
+        var image = new ProductImage();
+        image.setProduct(product);
+        image.setUrl("/media/bench-" + n + "-" + i + ".jpg");
+        image.setSortOrder(i);
+        product.getImages().add(image);
+      }
+      for (int i = 0; i < VARIANTS_PER_PRODUCT; i++) {
+        var variant = new ProductVariant();
+        variant.setProduct(product);
+        variant.setName("Size " + i);
+        variant.setStock(10);
+        variant.setSortOrder(i);
+        product.getVariants().add(variant);
+      }
+      for (int i = 0; i < TAGS_PER_PRODUCT; i++) {
+        product.getTags().add(tags.get((n + i) % TAG_POOL));
+      }
+      entityManager.persist(product);
+      if (n % 500 == 499) {
+        entityManager.flush();
+        entityManager.clear();
+        tags.replaceAll(tag -> entityManager.getReference(Tag.class, tag.getId()));
+      }
+    }
+  }
+
+  private long count(String sql) {
+    return ((Number) entityManager.createNativeQuery(sql).getSingleResult()).longValue();
+  }
+
+  /** Медиана по iterations прогонам; перед каждым сессия очищается, чтобы не читать из неё. */
+  private long measure(Supplier<List<Product>> load) {
+    long[] timings = new long[Math.max(1, iterations)];
+    for (int i = 0; i < timings.length; i++) {
+      entityManager.clear();
+      long started = System.nanoTime();
+      load.get();
+      timings[i] = (System.nanoTime() - started) / 1_000_000;
+    }
+    Arrays.sort(timings);
+    return timings[timings.length / 2];
+  }
+}
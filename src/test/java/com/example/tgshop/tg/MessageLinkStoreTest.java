@@ -0,0 +1,136 @@
+package com.example.tgshop.tg;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.example.tgshop.common.UuidUtil;
+import com.example.tgshop.config.AppProperties;
+import com.example.tgshop.tg.MessageLinkStore.ChatKey;
+import com.example.tgshop.tg.MessageLinkStore.Link;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Optional;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+class MessageLinkStoreTest {
+
+    private static final ChatKey PROMPT = new ChatKey(-100L, 10);
+    private static final ChatKey CARD = new ChatKey(-100L, 5);
+    private static final UUID ORDER = UUID.randomUUID();
+
+    private final MessageLinkRepository repository = mock(MessageLinkRepository.class);
+    private final AppProperties props = new AppProperties();
+
+    private MessageLinkStore store() {
+        return new MessageLinkStore(repository, props, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void putWritesThroughAndServesReadsFromCache() {
+        var store = store();
+
+        store.put(MessageLink.Kind.USER_TO_ADMIN, new ChatKey(42L, 1), CARD, ORDER);
+
+        assertThat(store.get(MessageLink.Kind.USER_TO_ADMIN, new ChatKey(42L, 1))).contains(new Link(CARD, ORDER));
+        verify(repository).upsert(eq("USER_TO_ADMIN"), eq(42L), eq(1), eq(-100L), eq(5), any(), any());
+        verify(repository, never()).findActive(any(), anyLong(), anyInt(), any());
+    }
+
+    @Test
+    void pendingPromptsExpireSoonerThanMirroredMessages() {
+        var store = store();
+        var expiresAt = ArgumentCaptor.forClass(Instant.class);
+
+        store.put(MessageLink.Kind.PENDING_SHIPMENT, PROMPT, CARD, ORDER);
+        store.put(MessageLink.Kind.ADMIN_TO_USER, CARD, new ChatKey(42L, 7), ORDER);
+
+        verify(repository, times(2)).upsert(any(), anyLong(), anyInt(), any(), any(), any(), expiresAt.capture());
+        assertThat(expiresAt.getAllValues().get(0))
+            .isCloseTo(Instant.now().plus(props.getTelegram().getPendingPromptTtl()), within(1, ChronoUnit.MINUTES));
+        assertThat(expiresAt.getAllValues().get(1))
+            .isCloseTo(Instant.now().plus(props.getTelegram().getMessageLinkTtl()), within(1, ChronoUnit.MINUTES));
+    }
+
+    @Test
+    void cacheMissReadsLinkWrittenByAnotherInstance() {
+        when(repository.findActive(eq(MessageLink.Kind.REPLY_ANCHOR), eq(42L), eq(3), any()))
+            .thenReturn(Optional.of(row(null, null, ORDER)));
+        var store = store();
+
+        assertThat(store.get(MessageLink.Kind.REPLY_ANCHOR, new ChatKey(42L, 3))).contains(new Link(null, ORDER));
+        assertThat(store.get(MessageLink.Kind.REPLY_ANCHOR, new ChatKey(42L, 3))).contains(new Link(null, ORDER));
+        verify(repository, times(1)).findActive(any(), anyLong(), anyInt(), any());
+    }
+
+    @Test
+    void onlyTheInstanceThatDeletesThePromptTakesIt() {
+        var first = store();
+        var second = store();
+        first.put(MessageLink.Kind.PENDING_REJECTION, PROMPT, CARD, ORDER);
+        second.put(MessageLink.Kind.PENDING_REJECTION, PROMPT, CARD, ORDER);
+        when(repository.deleteLink(MessageLink.Kind.PENDING_REJECTION, PROMPT.chatId(), PROMPT.messageId()))
+            .thenReturn(1, 0);
+
+        assertThat(first.take(MessageLink.Kind.PENDING_REJECTION, PROMPT)).contains(new Link(CARD, ORDER));
+        assertThat(second.take(MessageLink.Kind.PENDING_REJECTION, PROMPT)).isEmpty();
+    }
+
+    @Test
+    void takeClaimsPromptPersistedByAnotherInstance() {
+        when(repository.findActive(eq(MessageLink.Kind.PENDING_SHIPMENT), eq(PROMPT.chatId()), eq(PROMPT.messageId()), any()))
+            .thenReturn(Optional.of(row(CARD.chatId(), CARD.messageId(), ORDER)));
+        when(repository.deleteLink(MessageLink.Kind.PENDING_SHIPMENT, PROMPT.chatId(), PROMPT.messageId())).thenReturn(1);
+
+        assertThat(store().take(MessageLink.Kind.PENDING_SHIPMENT, PROMPT)).contains(new Link(CARD, ORDER));
+    }
+
+    @Test
+    void takeOfUnknownPromptDeletesNothing() {
+        assertThat(store().take(MessageLink.Kind.PENDING_SHIPMENT, PROMPT)).isEmpty();
+        verify(repository, never()).deleteLink(any(), anyLong(), anyInt());
+    }
+
+    @Test
+    void promptThatFailedToPersistIsStillTakenOnce() {
+        when(repository.upsert(any(), anyLong(), anyInt(), any(), any(), any(), any()))
+            .thenThrow(new DataAccessResourceFailureException("db down"));
+        var store = store();
+
+        store.put(MessageLink.Kind.PENDING_SHIPMENT, PROMPT, CARD, ORDER);
+
+        // строки в БД нет, и DELETE вернул бы 0 — связь отдаёт сам кэш
+        assertThat(store.take(MessageLink.Kind.PENDING_SHIPMENT, PROMPT)).contains(new Link(CARD, ORDER));
+        assertThat(store.take(MessageLink.Kind.PENDING_SHIPMENT, PROMPT)).isEmpty();
+        verify(repository, never()).deleteLink(any(), anyLong(), anyInt());
+    }
+
+    @Test
+    void purgeDeletesExpiredRowsInBatches() {
+        when(repository.deleteExpired(any(), anyInt())).thenReturn(5000, 5000, 12);
+
+        store().purgeExpired();
+
+        verify(repository, times(3)).deleteExpired(any(), eq(5000));
+    }
+
+    private static MessageLink row(Long targetChatId, Integer targetMessageId, UUID orderId) {
+        var row = new MessageLink();
+        row.setTargetChatId(targetChatId);
+        row.setTargetMessageId(targetMessageId);
+        row.setOrderId(UuidUtil.toBytes(orderId));
+        return row;
+    }
+}
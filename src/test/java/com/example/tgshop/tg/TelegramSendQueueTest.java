@@ -0,0 +1,170 @@
+package com.example.tgshop.tg;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.example.tgshop.config.AppProperties;
+import com.example.tgshop.tg.TelegramSendQueue.Priority;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.api.objects.ApiResponse;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+class TelegramSendQueueTest {
+
+    private final AppProperties props = new AppProperties();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private TelegramSendQueue queue;
+
+    @AfterEach
+    void tearDown() {
+        if (queue != null) {
+            queue.shutdown();
+        }
+    }
+
+    private TelegramSendQueue start() {
+        queue = new TelegramSendQueue(props, meterRegistry);
+        return queue;
+    }
+
+    @Test
+    void callReturnsApiResponse() throws Exception {
+        start();
+
+        assertThat(queue.call("42", Priority.INTERACTIVE, () -> "ok")).isEqualTo("ok");
+        assertThat(meterRegistry.get("tg.send.queue.depth").gauge().value()).isZero();
+        assertThat(meterRegistry.get("tg.send.latency").tag("priority", "interactive").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void sendsOneRequestPerChatAtATimeInSubmitOrder() throws Exception {
+        props.getTelegram().setSendPerChatPerSecond(1000);
+        props.getTelegram().setSendPerChatBurst(1000);
+        start();
+        var inFlight = new AtomicInteger();
+        var maxInFlight = new AtomicInteger();
+        List<Integer> sent = Collections.synchronizedList(new ArrayList<>());
+        var futures = new ArrayList<CompletableFuture<Integer>>();
+
+        for (int i = 0; i < 20; i++) {
+            int n = i;
+            futures.add(queue.submit("42", Priority.INTERACTIVE, () -> {
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                sleep(2);
+                sent.add(n);
+                inFlight.decrementAndGet();
+                return n;
+            }));
+        }
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+
+        assertThat(maxInFlight).hasValue(1);
+        assertThat(sent).containsExactlyElementsOf(futures.stream().map(CompletableFuture::join).toList());
+        assertThat(sent).isSorted();
+    }
+
+    @Test
+    void higherPriorityGoesFirstWhileWaitingForGlobalToken() throws Exception {
+        props.getTelegram().setSendGlobalPerSecond(1);
+        start();
+        List<Priority> sent = Collections.synchronizedList(new ArrayList<>());
+
+        // первый вызов забирает единственный глобальный токен, остальные ждут его пополнения
+        queue.submit(null, Priority.BULK, () -> sent.add(Priority.BULK)).get(5, TimeUnit.SECONDS);
+        var bulk = queue.submit("1", Priority.BULK, () -> sent.add(Priority.BULK));
+        var admin = queue.submit("-100", Priority.ADMIN, () -> sent.add(Priority.ADMIN));
+        CompletableFuture.allOf(bulk, admin).get(10, TimeUnit.SECONDS);
+
+        assertThat(sent).containsExactly(Priority.BULK, Priority.ADMIN, Priority.BULK);
+    }
+
+    @Test
+    void retriesAfterTooManyRequests() throws Exception {
+        start();
+        var attempts = new AtomicInteger();
+
+        String result = queue.call("42", Priority.INTERACTIVE, () -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw tooManyRequests();
+            }
+            return "sent";
+        });
+
+        assertThat(result).isEqualTo("sent");
+        assertThat(attempts).hasValue(3);
+        assertThat(meterRegistry.get("tg.send.throttled").counter().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("tg.send.failed").counter().count()).isZero();
+    }
+
+    @Test
+    void givesUpAfterMaxRetries() {
+        props.getTelegram().setSendMaxRetries(2);
+        start();
+        var attempts = new AtomicInteger();
+
+        assertThatThrownBy(() -> queue.call(null, Priority.BULK, () -> {
+            attempts.incrementAndGet();
+            throw tooManyRequests();
+        })).isInstanceOf(TelegramApiRequestException.class);
+
+        assertThat(attempts).hasValue(3);
+        assertThat(meterRegistry.get("tg.send.failed").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void failureDoesNotBlockTheChat() throws Exception {
+        start();
+        var failed = queue.submit("42", Priority.INTERACTIVE, () -> {
+            throw new TelegramApiException("chat not found");
+        });
+
+        assertThatThrownBy(() -> failed.get(5, TimeUnit.SECONDS))
+            .isInstanceOf(ExecutionException.class)
+            .hasCauseInstanceOf(TelegramApiException.class);
+        assertThat(queue.submit("42", Priority.INTERACTIVE, () -> "next").get(5, TimeUnit.SECONDS)).isEqualTo("next");
+    }
+
+    @Test
+    void adminChatsGetAdminPriority() {
+        props.getTelegram().setAdminUserIds("1001, 1002");
+        start();
+
+        assertThat(queue.priorityFor("-1001234567890", Priority.BULK)).isEqualTo(Priority.ADMIN);
+        assertThat(queue.priorityFor("1002", Priority.BULK)).isEqualTo(Priority.ADMIN);
+        assertThat(queue.priorityFor("555", Priority.BULK)).isEqualTo(Priority.BULK);
+        assertThat(queue.priorityFor("@shop_channel", Priority.INTERACTIVE)).isEqualTo(Priority.INTERACTIVE);
+        assertThat(queue.priorityFor(null, Priority.INTERACTIVE)).isEqualTo(Priority.INTERACTIVE);
+    }
+
+    private static TelegramApiRequestException tooManyRequests() {
+        try {
+            ApiResponse<?> response = new ObjectMapper().readValue(
+                "{\"ok\":false,\"error_code\":429,\"description\":\"Too Many Requests\","
+                    + "\"parameters\":{\"retry_after\":0}}",
+                ApiResponse.class);
+            return new TelegramApiRequestException("Too Many Requests", response);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
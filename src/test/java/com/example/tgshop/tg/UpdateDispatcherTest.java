@@ -0,0 +1,197 @@
+package com.example.tgshop.tg;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.example.tgshop.config.AppProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.api.objects.Chat;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+class UpdateDispatcherTest {
+
+    private final AppProperties props = new AppProperties();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private UpdateDispatcher dispatcher;
+
+    @AfterEach
+    void tearDown() {
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+        }
+    }
+
+    private UpdateDispatcher start() {
+        dispatcher = new UpdateDispatcher(props, meterRegistry);
+        return dispatcher;
+    }
+
+    @Test
+    void handlesUpdatesOfOneChatInOrderOneAtATime() throws Exception {
+        start();
+        var inFlight = new AtomicInteger();
+        var maxInFlight = new AtomicInteger();
+        List<Integer> handled = Collections.synchronizedList(new ArrayList<>());
+        var done = new CountDownLatch(30);
+
+        for (int i = 0; i < 30; i++) {
+            dispatcher.dispatch(message(i, 42L), update -> {
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                sleep(1);
+                handled.add(update.getUpdateId());
+                inFlight.decrementAndGet();
+                done.countDown();
+            });
+        }
+
+        assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(maxInFlight).hasValue(1);
+        assertThat(handled).isSorted().hasSize(30);
+        awaitIdle();
+    }
+
+    @Test
+    void handlesDifferentChatsInParallel() throws Exception {
+        start();
+        var bothStarted = new CountDownLatch(2);
+        var done = new CountDownLatch(2);
+
+        for (long chatId : new long[] {1L, 2L}) {
+            dispatcher.dispatch(message((int) chatId, chatId), update -> {
+                bothStarted.countDown();
+                // каждый ждёт другого — дождутся, только если чаты обрабатываются одновременно
+                if (await(bothStarted)) {
+                    done.countDown();
+                }
+            });
+        }
+
+        assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+        awaitIdle();
+    }
+
+    @Test
+    void failedUpdateDoesNotBreakTheChatChain() throws Exception {
+        start();
+        List<Integer> handled = Collections.synchronizedList(new ArrayList<>());
+        var done = new CountDownLatch(1);
+
+        dispatcher.dispatch(message(1, 42L), update -> {
+            throw new IllegalStateException("boom");
+        });
+        dispatcher.dispatch(message(2, 42L), update -> {
+            throw new AssertionError("boom");
+        });
+        dispatcher.dispatch(message(3, 42L), update -> {
+            handled.add(update.getUpdateId());
+            done.countDown();
+        });
+
+        assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(handled).containsExactly(3);
+        awaitIdle();
+    }
+
+    @Test
+    void dispatchBlocksWhenTooManyUpdatesAreInFlight() throws Exception {
+        props.getTelegram().setUpdateMaxInFlight(2);
+        start();
+        var release = new CountDownLatch(1);
+        var handled = new CountDownLatch(3);
+
+        dispatcher.dispatch(message(1, 1L), update -> {
+            await(release);
+            handled.countDown();
+        });
+        dispatcher.dispatch(message(2, 2L), update -> {
+            await(release);
+            handled.countDown();
+        });
+        var third = CompletableFuture.runAsync(() -> dispatcher.dispatch(message(3, 3L), update -> handled.countDown()));
+
+        Thread.sleep(200);
+        assertThat(third).isNotDone();
+        assertThat(inFlight()).isEqualTo(2);
+
+        release.countDown();
+        third.get(5, TimeUnit.SECONDS);
+        assertThat(handled.await(5, TimeUnit.SECONDS)).isTrue();
+        awaitIdle();
+    }
+
+    @Test
+    void handlesUpdatesWithoutChat() throws Exception {
+        start();
+        var done = new CountDownLatch(1);
+        var update = new Update();
+        update.setUpdateId(7);
+
+        dispatcher.dispatch(update, u -> done.countDown());
+
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        awaitIdle();
+    }
+
+    @Test
+    void updatesRejectedAfterShutdownDoNotHoldPermits() throws Exception {
+        start();
+        dispatcher.shutdown();
+        var handled = new AtomicInteger();
+
+        dispatcher.dispatch(message(1, 42L), update -> handled.incrementAndGet());
+        dispatcher.dispatch(new Update(), update -> handled.incrementAndGet());
+
+        assertThat(handled).hasValue(0);
+        awaitIdle();
+    }
+
+    private double inFlight() {
+        return meterRegistry.get("tg.updates.in_flight").gauge().value();
+    }
+
+    /** Разрешение возвращается после обработчика, поэтому счётчик обнуляется чуть позже самой обработки. */
+    private void awaitIdle() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while ((inFlight() > 0 || meterRegistry.get("tg.updates.chats").gauge().value() > 0)
+            && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(inFlight()).isZero();
+        assertThat(meterRegistry.get("tg.updates.chats").gauge().value()).isZero();
+    }
+
+    private static Update message(int updateId, long chatId) {
+        var message = new Message();
+        message.setChat(new Chat(chatId, "private"));
+        var update = new Update();
+        update.setUpdateId(updateId);
+        update.setMessage(message);
+        return update;
+    }
+
+    private static boolean await(CountDownLatch latch) {
+        try {
+            return latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}